@@ -7,8 +7,32 @@ interface Book {
     level: 'N5' | 'N4' | 'N3' | 'N2' | 'N1' | 'N/A';
     imageUrl: string;
     bookUrl: string;
+    coverId?: string;  // Set when the backend has a local copy of the cover
+    duplicates?: Listing[];  // Other listings of the same book the backend merged into this one
 }
 
+// A merged listing of a book, e.g. the same volume on another shop
+interface Listing {
+    title: string;
+    bookUrl?: string;  // Missing for sources without product pages (animate)
+}
+
+// Widths served by /api/covers, the cover box below is 96px wide
+const coverWidths = [80, 160, 320];
+
+// Covers come from the backend's cover cache when it has them, otherwise straight from the source site
+const coverProps = (book: Book) => {
+    if (!book.coverId) {
+        return { src: book.imageUrl };
+    }
+    const coverUrl = (width: number) => `http://localhost:8080/api/covers/${book.coverId}?w=${width}`;
+    return {
+        src: coverUrl(160),
+        srcSet: coverWidths.map(width => `${coverUrl(width)} ${width}w`).join(', '),
+        sizes: '96px',
+    };
+};
+
 const BookList: React.FC = () => { 
     const [books, setBooks] = useState<Book[]>([]);
     const [aniBooks, setAniBooks] = useState<Book[]>([]);
@@ -41,11 +65,13 @@ const BookList: React.FC = () => {
             .then(response => response.json())
             .then(data => {
                 const allBooks = Object.keys(data).flatMap(level =>
-                    data[level].map((book: { title: string, imageUrl: string, bookUrl: string }) => ({ 
+                    data[level].map((book: { title: string, imageUrl: string, bookUrl: string, coverId?: string, duplicates?: Listing[] }) => ({ 
                         title: book.title,
                         level,
                         imageUrl: book.imageUrl,
                         bookUrl: book.bookUrl,
+                        coverId: book.coverId,
+                        duplicates: book.duplicates,
                     }))
                     .filter((book : Book) => book.level !== 'N/A')
                 );
@@ -54,16 +80,21 @@ const BookList: React.FC = () => {
             })
             .catch(error => console.error("Error loading the book data: ", error));
 
-        // Fetch JSON data from ehonnavi file (N5 level books)
+        // Fetch JSON data from ehonnavi file (N5 level books, unless merged with a book classified on another source).
+        // Only levels that have books are in the file, so any of them, N5 included, can be missing
         fetch('http://localhost:8080/api/ehonnavi-books')
             .then(response => response.json())
             .then(data => {
-                const ehonnaviBooks = data.N5.map((book: { title: string, imageUrl: string, bookUrl: string }) => ({
-                    title: book.title,
-                    imageUrl: book.imageUrl,
-                    bookUrl: book.bookUrl,
-                    level: 'N5' 
-                }));
+                const ehonnaviBooks = Object.keys(data).flatMap(level =>
+                    (data[level] || []).map((book: { title: string, imageUrl: string, bookUrl: string, coverId?: string, duplicates?: Listing[] }) => ({
+                        title: book.title,
+                        imageUrl: book.imageUrl,
+                        bookUrl: book.bookUrl,
+                        coverId: book.coverId,
+                        duplicates: book.duplicates,
+                        level
+                    }))
+                );
 
                 setEhonnaviBooks(ehonnaviBooks);  // Store separately for now
             })
@@ -74,9 +105,11 @@ const BookList: React.FC = () => {
             .then(response => response.json())
             .then(data => {
                 const allAniBooks = Object.keys(data).flatMap(level =>
-                    data[level].map((book: { title: string, imageUrl: string }) => ({ 
+                    data[level].map((book: { title: string, imageUrl: string, coverId?: string, duplicates?: Listing[] }) => ({ 
                         title: book.title, 
                         imageUrl: book.imageUrl, 
+                        coverId: book.coverId,
+                        duplicates: book.duplicates,
                         level 
                     }))
                 );
@@ -178,13 +211,25 @@ const BookList: React.FC = () => {
             {currentBooks.map((book, index) => (
                 <div key={index} className="mb-6 animate__animated animate__fadeInUp"> {/* Added div wrapper */}
                     <div className='flex items-center space-x-4 justify-center'>
-                        <img src={book.imageUrl} alt={book.title} className='w-24 h-24 object-cover mb-2'/>
+                        <img {...coverProps(book)} alt={book.title} loading="lazy" className='w-24 h-24 object-cover mb-2'/>
                     </div>
                     <div className='mb-4'>
                         <a href={book.bookUrl} target="_blank" rel="noopener noreferrer" className="text-blue-500 hover:underline">
                             {book.title}
                         </a> ({book.level})
                     </div>
+                    {book.duplicates && book.duplicates.length > 0 && (
+                        <div className='mb-4 text-sm'>
+                            Also listed as:{' '}
+                            {book.duplicates.map((listing, listingIndex) => listing.bookUrl ? (
+                                <a key={listingIndex} href={listing.bookUrl} target="_blank" rel="noopener noreferrer" className="text-blue-500 hover:underline mx-1">
+                                    {listing.title}
+                                </a>
+                            ) : (
+                                <span key={listingIndex} className="mx-1">{listing.title}</span>
+                            ))}
+                        </div>
+                    )}
                 </div>
             ))}
 
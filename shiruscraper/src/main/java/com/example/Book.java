@@ -0,0 +1,128 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One scraped book, shared by the scrapers, the classification step, the JSON export and the search index.
+// Everything but the JLPT level and cover id is fixed once the book is scraped, the level is set in place when the
+// book is classified and books are only grouped by level when they are exported (see JlptLevel.bucket).
+// URLs are kept as a host prefix plus the rest of the URL, and every distinct prefix (e.g. "https://honto.jp")
+// is stored once for the whole process, so a large catalog only pays for the part of each URL that differs.
+public final class Book {
+
+    // Canonical copy of every URL prefix seen so far
+    private static final Map<String, String> PREFIXES = new ConcurrentHashMap<>();
+
+    private final String source;
+    private JlptLevel level;
+    private final String title;
+    private final String normalizedTitle;
+    private final String imagePrefix;
+    private final String imagePath;
+    private final String bookPrefix;
+    private final String bookPath;
+    private String coverId;
+    private List<Book> duplicates = List.of();
+
+    public Book(String source, JlptLevel level, String title, String imageUrl, String bookUrl) {
+        this.source = source;
+        this.level = level;
+        this.title = title;
+        this.normalizedTitle = title != null ? Titles.normalizeTitle(title) : "";
+        this.imagePrefix = prefix(imageUrl);
+        this.imagePath = path(imageUrl);
+        this.bookPrefix = prefix(bookUrl);
+        this.bookPath = path(bookUrl);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public JlptLevel level() {
+        return level;
+    }
+
+    // Move the book to another level, the book isn't held in any per-level list until export
+    public void setLevel(JlptLevel level) {
+        this.level = level;
+    }
+
+    public String title() {
+        return title;
+    }
+
+    // Title as produced by Titles.normalizeTitle, used for matching and search
+    public String normalizedTitle() {
+        return normalizedTitle;
+    }
+
+    public String imageUrl() {
+        return join(imagePrefix, imagePath);
+    }
+
+    public String bookUrl() {
+        return join(bookPrefix, bookPath);
+    }
+
+    // Id of the cover in the local CoverCache, null until the cover has been downloaded
+    public String coverId() {
+        return coverId;
+    }
+
+    public void setCoverId(String coverId) {
+        this.coverId = coverId;
+    }
+
+    // Other listings of the same book that were merged into this one (see TitleDeduplicator), usually none
+    public List<Book> duplicates() {
+        return duplicates;
+    }
+
+    public void addDuplicate(Book duplicate) {
+        if (duplicates.isEmpty()) {
+            duplicates = new ArrayList<>(2);
+        }
+        duplicates.add(duplicate);
+        // A duplicate's own duplicates belong to this book now
+        duplicates.addAll(duplicate.duplicates);
+        duplicate.duplicates = List.of();
+    }
+
+    @Override
+    public String toString() {
+        return "Book[" + source + ", " + level.label() + ", " + title + "]";
+    }
+
+    // Scheme and host of a URL ("https://honto.jp"), or null when the URL has none
+    private static String prefix(String url) {
+        int end = prefixEnd(url);
+        return end < 0 ? null : PREFIXES.computeIfAbsent(url.substring(0, end), key -> key);
+    }
+
+    private static String path(String url) {
+        int end = prefixEnd(url);
+        return end < 0 ? url : url.substring(end);
+    }
+
+    private static int prefixEnd(String url) {
+        if (url == null) {
+            return -1;
+        }
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return -1;
+        }
+        int slash = url.indexOf('/', scheme + 3);
+        return slash < 0 ? url.length() : slash;
+    }
+
+    private static String join(String prefix, String path) {
+        if (prefix == null) {
+            return path;
+        }
+        return path.isEmpty() ? prefix : prefix + path;
+    }
+}
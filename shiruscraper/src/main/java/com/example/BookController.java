@@ -1,65 +1,180 @@
 package com.example;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.net.URISyntaxException;
-import java.nio.file.Path;
-
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 @RestController
 @CrossOrigin(origins = "*")  // Allow all origins temporarily for testing purposes
 public class BookController {
 
-    // Utility function to load JSON from resources
-    private String loadJSONFromResource(String resourcePath) throws IOException, URISyntaxException {
-        Path path = Paths.get(new ClassPathResource(resourcePath).getURI());
-        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // Cover URLs name fixed content (see CoverCache), so browsers and CDNs can keep them for a year without revalidating
+    private static final String COVER_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final DatasetStore datasetStore;
+    private final BookIndex bookIndex;
+    private final CoverCache coverCache;
+    private final String cacheControl;
+
+    public BookController(DatasetStore datasetStore, BookIndex bookIndex, CoverCache coverCache,
+                          @Value("${shiru.data.max-age-seconds:60}") long maxAgeSeconds,
+                          @Value("${shiru.data.stale-while-revalidate-seconds:300}") long staleWhileRevalidateSeconds) {
+        this.datasetStore = datasetStore;
+        this.bookIndex = bookIndex;
+        this.coverCache = coverCache;
+        // Caches may keep answering with an expired copy while they revalidate it in the background
+        this.cacheControl = "public, max-age=" + maxAgeSeconds + ", stale-while-revalidate=" + staleWhileRevalidateSeconds;
     }
 
-    @GetMapping("/api/books")
-    public ResponseEntity<String> getBooks() {
-        try {
-            // Use the classpath to access the JSON file inside resources directory
-            String content = loadJSONFromResource("books_by_jlpt.json");
-            return ResponseEntity.ok(content);
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Serve a dataset from memory, gzipped when the client accepts it and 304 when the client's copy is current
+    private ResponseEntity<byte[]> serveDataset(String name, String ifNoneMatch, String acceptEncoding) {
+        DatasetStore.Dataset dataset = datasetStore.get(name);
+        if (dataset == null) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                 .body("Error reading the JSON file: " + e.getMessage());
+                                 .contentType(MediaType.TEXT_PLAIN)
+                                 .body(datasetStore.loadError(name).getBytes(StandardCharsets.UTF_8));
         }
+
+        if (notModified(ifNoneMatch, dataset.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                 .eTag(dataset.etag())
+                                 .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                                 .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                                 .build();
+        }
+
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(dataset.etag())
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(gzip ? dataset.gzipped() : dataset.bytes());
+    }
+
+    // If-None-Match uses the weak comparison: any listed tag matches with or without its W/ prefix, and * matches all
+    private static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaqueTag(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    // Whether Accept-Encoding lists gzip (or *) without refusing it with q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0{0,3})?");
+            }
+        }
+        return false;
+    }
+
+    @GetMapping("/api/books")
+    public ResponseEntity<byte[]> getBooks(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return serveDataset("books", ifNoneMatch, acceptEncoding);
     }
 
     @GetMapping("/api/ani-books")
-    public ResponseEntity<String> getAniBooks() {
+    public ResponseEntity<byte[]> getAniBooks(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return serveDataset("ani-books", ifNoneMatch, acceptEncoding);
+    }
+
+    @GetMapping("/api/ehonnavi-books")
+    public ResponseEntity<byte[]> getEhonnaviBooks(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return serveDataset("ehonnavi-books", ifNoneMatch, acceptEncoding);
+    }
+
+    // Search across every source, e.g. /api/books/search?level=N4&source=honto&title=ゆめ&limit=20
+    // Pass the returned nextCursor as cursor to get the following page
+    @GetMapping("/api/books/search")
+    public ResponseEntity<?> searchBooks(@RequestParam(required = false) String level,
+                                         @RequestParam(required = false) String source,
+                                         @RequestParam(required = false) String title,
+                                         @RequestParam(defaultValue = "contains") String match,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (!match.equals("contains") && !match.equals("prefix")) {
+            return ResponseEntity.badRequest().body("match must be 'contains' or 'prefix'");
+        }
+
         try {
-            // Use the classpath to access the JSON file inside resources directory
-            String content = loadJSONFromResource("Ani_Online_Books.json");
-            return ResponseEntity.ok(content);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                 .body("Error reading the JSON file: " + e.getMessage());
+            return ResponseEntity.ok(bookIndex.search(level, source, title, match.equals("prefix"), cursor, limit));
+        } catch (BookIndex.InvalidCursorException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
-    @GetMapping("/api/ehonnavi-books")
-    public ResponseEntity<String> getEhonnaviBooks() {
+    // Cover from the local cover cache at one of CoverCache.WIDTHS, e.g. /api/covers/0123...cdef?w=160
+    @GetMapping("/api/covers/{coverId}")
+    public ResponseEntity<byte[]> getCover(@PathVariable String coverId,
+                                           @RequestParam(defaultValue = "160") int w,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (!CoverCache.WIDTHS.contains(w)) {
+            return ResponseEntity.badRequest()
+                                 .contentType(MediaType.TEXT_PLAIN)
+                                 .body(("w must be one of " + CoverCache.WIDTHS).getBytes(StandardCharsets.UTF_8));
+        }
+
+        String etag = "\"" + coverId + "-" + w + "\"";
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                 .eTag(etag)
+                                 .header(HttpHeaders.CACHE_CONTROL, COVER_CACHE_CONTROL)
+                                 .build();
+        }
+
         try {
-            // Use the classpath to access the JSON file inside resources directory
-            String content = loadJSONFromResource("N5Books.json");
-            return ResponseEntity.ok(content);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                 .body("Error reading the JSON file: " + e.getMessage());
+            CoverCache.Cover cover = coverCache.resized(coverId, w);
+            if (cover == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                                 .contentType(MediaType.parseMediaType(cover.contentType()))
+                                 .eTag(etag)
+                                 .header(HttpHeaders.CACHE_CONTROL, COVER_CACHE_CONTROL)
+                                 .body(cover.bytes());
+        } catch (IOException e) {
+            System.out.println("Error serving cover " + coverId + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 }
@@ -0,0 +1,315 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Queryable in-memory view of all the datasets in DatasetStore.
+// Listings of the same book on several sources are merged into one entry (see TitleDeduplicator) that lists the
+// other sources' URLs, and that entry is found by any of its sources and titles. Its level is the canonical
+// listing's, which the crawl also gives every listing it merges.
+// Books get a sequential id, and the index keeps sorted id lists per JLPT level, per source and per title bigram,
+// so a search only walks the ids that can match and pages are cut with a cursor on the id.
+// The index is rebuilt lazily the first time it's used after DatasetStore publishes a new dataset version.
+@Component
+public class BookIndex {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Dataset name -> source name used in the API
+    private static final Map<String, String> DATASET_SOURCES = new LinkedHashMap<>();
+    static {
+        DATASET_SOURCES.put("books", "honto");
+        DATASET_SOURCES.put("ani-books", "animate");
+        DATASET_SOURCES.put("ehonnavi-books", "ehonnavi");
+    }
+
+    private final DatasetStore datasetStore;
+    private volatile Snapshot snapshot;
+
+    // A book as returned by the search endpoint, only built for the books on the page being returned
+    public record IndexedBook(String source, String level, String title, String imageUrl, String bookUrl, String coverId,
+                              List<Duplicate> duplicates) {
+        static IndexedBook of(Book book) {
+            List<Duplicate> duplicates = new ArrayList<>(book.duplicates().size());
+            for (Book duplicate : book.duplicates()) {
+                duplicates.add(new Duplicate(duplicate.source(), duplicate.title(), duplicate.bookUrl()));
+            }
+            return new IndexedBook(book.source(), book.level().label(), book.title(), book.imageUrl(), book.bookUrl(), book.coverId(),
+                    duplicates);
+        }
+    }
+
+    // Another listing of a returned book, on the same or another source
+    public record Duplicate(String source, String title, String bookUrl) {
+    }
+
+    // One page of search results, nextCursor is null on the last page
+    public record SearchPage(List<IndexedBook> items, String nextCursor) {
+    }
+
+    // Thrown for a cursor that doesn't belong to the current index
+    public static class InvalidCursorException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidCursorException(String message) {
+            super(message);
+        }
+    }
+
+    // Immutable index over one set of dataset versions
+    private record Snapshot(List<DatasetStore.Dataset> sources, long version, List<Book> books,
+                            Map<String, int[]> idsByLevel, Map<String, int[]> idsBySource, Map<Integer, int[]> idsByBigram) {
+    }
+
+    public BookIndex(DatasetStore datasetStore) {
+        this.datasetStore = datasetStore;
+    }
+
+    // Find books matching every given filter, null filters are ignored.
+    // With prefixOnly the title has to start with the query, otherwise it can appear anywhere in the title.
+    public SearchPage search(String level, String source, String title, boolean prefixOnly, String cursor, int limit) {
+        Snapshot index = current();
+        int after = decodeCursor(cursor, index.version());
+
+        String query = title != null ? Titles.normalizeTitle(title) : "";
+
+        // Start from the most selective id list available, every other filter is checked per book
+        int[] candidates;
+        if (query.length() >= 2) {
+            candidates = intersectBigrams(index, query);
+        } else if (level != null) {
+            candidates = index.idsByLevel().getOrDefault(level, new int[0]);
+        } else if (source != null) {
+            candidates = index.idsBySource().getOrDefault(source, new int[0]);
+        } else {
+            candidates = null; // Every book
+        }
+
+        int total = candidates != null ? candidates.length : index.books().size();
+        int start = candidates != null ? firstAfter(candidates, after) : after + 1;
+
+        List<IndexedBook> items = new ArrayList<>(limit);
+        int lastId = -1;
+        for (int i = start; i < total && items.size() <= limit; i++) {
+            int id = candidates != null ? candidates[i] : i;
+            Book book = index.books().get(id);
+
+            if ((level != null && !level.equals(book.level().label()))
+                    || (source != null && listingsOf(book).stream().noneMatch(listing -> source.equals(listing.source())))
+                    || (!query.isEmpty() && listingsOf(book).stream().noneMatch(listing -> prefixOnly
+                            ? listing.normalizedTitle().startsWith(query) : listing.normalizedTitle().contains(query)))) {
+                continue;
+            }
+
+            if (items.size() == limit) {
+                // One more match exists, so there is a next page
+                return new SearchPage(items, encodeCursor(index.version(), lastId));
+            }
+            items.add(IndexedBook.of(book));
+            lastId = id;
+        }
+
+        return new SearchPage(items, null);
+    }
+
+    // Rebuild the index if any dataset changed since the last build
+    private Snapshot current() {
+        List<DatasetStore.Dataset> sources = new ArrayList<>();
+        for (String name : DATASET_SOURCES.keySet()) {
+            sources.add(datasetStore.get(name));
+        }
+
+        Snapshot existing = snapshot;
+        if (existing != null && sameDatasets(existing.sources(), sources)) {
+            return existing;
+        }
+
+        synchronized (this) {
+            if (snapshot == null || !sameDatasets(snapshot.sources(), sources)) {
+                snapshot = build(sources, snapshot != null ? snapshot.version() + 1 : 1);
+            }
+            return snapshot;
+        }
+    }
+
+    private static boolean sameDatasets(List<DatasetStore.Dataset> a, List<DatasetStore.Dataset> b) {
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The book followed by its duplicates
+    private static List<Book> listingsOf(Book book) {
+        if (book.duplicates().isEmpty()) {
+            return List.of(book);
+        }
+        List<Book> listings = new ArrayList<>(book.duplicates().size() + 1);
+        listings.add(book);
+        listings.addAll(book.duplicates());
+        return listings;
+    }
+
+    private static Snapshot build(List<DatasetStore.Dataset> sources, long version) {
+        List<Book> listings = new ArrayList<>();
+
+        Iterator<String> sourceNames = DATASET_SOURCES.values().iterator();
+        for (DatasetStore.Dataset dataset : sources) {
+            String source = sourceNames.next();
+            if (dataset == null) {
+                continue;
+            }
+
+            try {
+                Iterator<Map.Entry<String, JsonNode>> levels = MAPPER.readTree(dataset.bytes()).fields();
+                while (levels.hasNext()) {
+                    Map.Entry<String, JsonNode> levelEntry = levels.next();
+                    JlptLevel level = JlptLevel.fromLabel(levelEntry.getKey());
+                    if (level == null) {
+                        System.out.println("Skipping unknown level " + levelEntry.getKey() + " in the " + source + " dataset");
+                        continue;
+                    }
+                    for (JsonNode node : levelEntry.getValue()) {
+                        Book book = readBook(source, level, node);
+                        book.setCoverId(node.path("coverId").asText(null));
+                        // Listings of other sources are only references, their own dataset has them in full
+                        for (JsonNode duplicate : node.path("duplicates")) {
+                            if (duplicate.path("source").asText(source).equals(source)) {
+                                book.addDuplicate(readBook(source, level, duplicate));
+                            }
+                        }
+                        listings.add(book);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Error indexing the " + source + " dataset: " + e.getMessage());
+            }
+        }
+
+        // Sources are read in DATASET_SOURCES order, so a book listed on several sources is kept as the first one's
+        List<Book> books = TitleDeduplicator.merge(listings);
+        Map<String, List<Integer>> idsByLevel = new HashMap<>();
+        Map<String, List<Integer>> idsBySource = new HashMap<>();
+        Map<Integer, List<Integer>> idsByBigram = new HashMap<>();
+        for (int id = 0; id < books.size(); id++) {
+            Book book = books.get(id);
+            // Filed under the canonical listing's level only, so a book is never listed under a level it doesn't show
+            idsByLevel.computeIfAbsent(book.level().label(), key -> new ArrayList<>()).add(id);
+
+            Set<String> bookSources = new HashSet<>();
+            Set<Integer> bookGrams = new HashSet<>();
+            for (Book listing : listingsOf(book)) {
+                bookSources.add(listing.source());
+                for (int gram : distinctBigrams(listing.normalizedTitle())) {
+                    bookGrams.add(gram);
+                }
+            }
+            for (String bookSource : bookSources) {
+                idsBySource.computeIfAbsent(bookSource, key -> new ArrayList<>()).add(id);
+            }
+            for (int gram : bookGrams) {
+                idsByBigram.computeIfAbsent(gram, key -> new ArrayList<>()).add(id);
+            }
+        }
+
+        System.out.println("Indexed " + books.size() + " books for search (" + (listings.size() - books.size())
+                + " listings merged as duplicates)");
+        return new Snapshot(sources, version, books, toArrays(idsByLevel), toArrays(idsBySource), toArrays(idsByBigram));
+    }
+
+    private static Book readBook(String source, JlptLevel level, JsonNode node) {
+        return new Book(source, level, node.path("title").asText(), node.path("imageUrl").asText(null), node.path("bookUrl").asText(null));
+    }
+
+    // Ids of the books that contain every bigram of the query, smallest posting list first
+    private static int[] intersectBigrams(Snapshot index, String query) {
+        int[] grams = distinctBigrams(query);
+        int[][] postings = new int[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            postings[i] = index.idsByBigram().get(grams[i]);
+            if (postings[i] == null) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(postings, (a, b) -> Integer.compare(a.length, b.length));
+
+        int[] result = postings[0];
+        for (int i = 1; i < postings.length && result.length > 0; i++) {
+            int[] other = postings[i];
+            int[] merged = new int[result.length];
+            int count = 0;
+            for (int a = 0, b = 0; a < result.length && b < other.length; ) {
+                if (result[a] == other[b]) {
+                    merged[count++] = result[a];
+                    a++;
+                    b++;
+                } else if (result[a] < other[b]) {
+                    a++;
+                } else {
+                    b++;
+                }
+            }
+            result = Arrays.copyOf(merged, count);
+        }
+        return result;
+    }
+
+    private static int[] distinctBigrams(String title) {
+        if (title.length() < 2) {
+            return new int[0];
+        }
+        int[] grams = new int[title.length() - 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (title.charAt(i) << 16) | title.charAt(i + 1);
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    private static <K> Map<K, int[]> toArrays(Map<K, List<Integer>> lists) {
+        Map<K, int[]> arrays = new HashMap<>();
+        for (Map.Entry<K, List<Integer>> entry : lists.entrySet()) {
+            arrays.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return arrays;
+    }
+
+    // Position of the first id greater than `after` in a sorted id list
+    private static int firstAfter(int[] ids, int after) {
+        int position = Arrays.binarySearch(ids, after);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    // Cursors are "<index version>.<last id>" so a cursor from an older index is rejected instead of skipping books
+    private static String encodeCursor(long version, int lastId) {
+        return version + "." + lastId;
+    }
+
+    private static int decodeCursor(String cursor, long version) {
+        if (cursor == null || cursor.isEmpty()) {
+            return -1;
+        }
+        String[] parts = cursor.split("\\.");
+        try {
+            if (parts.length == 2 && Long.parseLong(parts[0]) == version) {
+                return Integer.parseInt(parts[1]);
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Malformed cursor: " + cursor);
+        }
+        throw new InvalidCursorException("The catalog was updated since this cursor was issued, start again from the first page");
+    }
+}
@@ -0,0 +1,104 @@
+package com.example;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+// Streams scraper output to disk one book at a time as {"N5": [{...}, ...], "N4": [...]}.
+// Nothing is buffered besides the generator's own small write buffer, so memory stays flat however large the
+// catalog gets. Output goes to a temp file next to the target that only replaces it on commit(), readers never
+// see a half written file.
+public class BookJsonWriter implements Closeable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Path target;
+    private final Path temp;
+    private final JsonGenerator generator;
+    private boolean committed;
+
+    public BookJsonWriter(String fileName) throws IOException {
+        this(Paths.get(fileName));
+    }
+
+    public BookJsonWriter(Path target) throws IOException {
+        this.target = target.toAbsolutePath();
+        // A temp file of its own, two writers of the same target (e.g. overlapping crawls) don't write into each other
+        this.temp = Files.createTempFile(this.target.getParent(), this.target.getFileName().toString(), ".tmp");
+
+        DefaultIndenter indenter = new DefaultIndenter("    ", DefaultIndenter.SYS_LF);
+        try {
+            this.generator = JSON_FACTORY.createGenerator(temp.toFile(), JsonEncoding.UTF8);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        this.generator.setPrettyPrinter(new DefaultPrettyPrinter().withObjectIndenter(indenter).withArrayIndenter(indenter));
+        this.generator.writeStartObject();
+    }
+
+    // Open the array for a JLPT level, books written until endLevel() go into it
+    public void startLevel(String level) throws IOException {
+        generator.writeArrayFieldStart(level);
+    }
+
+    // Write one book as {"title", "imageUrl", "bookUrl", "coverId", "duplicates"}, missing fields are left out.
+    // Merged listings of the same book go into duplicates as {"title", "bookUrl", "source"}. The source is left out for
+    // listings of the book's own source, which aren't published anywhere else. Listings of other sources are references
+    // to books those sources publish in full
+    public void writeBook(Book book) throws IOException {
+        generator.writeStartObject();
+        writeField("title", book.title());
+        writeField("imageUrl", book.imageUrl());
+        writeField("bookUrl", book.bookUrl());
+        writeField("coverId", book.coverId());
+        if (!book.duplicates().isEmpty()) {
+            generator.writeArrayFieldStart("duplicates");
+            for (Book duplicate : book.duplicates()) {
+                generator.writeStartObject();
+                writeField("title", duplicate.title());
+                writeField("bookUrl", duplicate.bookUrl());
+                writeField("source", duplicate.source().equals(book.source()) ? null : duplicate.source());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeField(String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    public void endLevel() throws IOException {
+        generator.writeEndArray();
+    }
+
+    // Finish the document and atomically move it over the target file
+    public void commit() throws IOException {
+        generator.writeEndObject();
+        generator.close();
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    // Without a commit the partial output is thrown away and the old file stays in place
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            generator.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+}
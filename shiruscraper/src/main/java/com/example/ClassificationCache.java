@@ -0,0 +1,92 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Persistent JLPT levels for titles that were already classified on an earlier run.
+// Backed by an append-only tab separated file (version, normalized title, level) that is read into memory on
+// first use, later lines win so a title can be reclassified by appending a new line.
+//
+// The version should change whenever the model or prompt changes, so old answers aren't reused.
+// The file location can be changed with -Dshiru.classificationCache=<path>
+public class ClassificationCache {
+
+    private static ClassificationCache shared;
+
+    private final Path file;
+    private final Map<String, String> levels = new ConcurrentHashMap<>();
+
+    public ClassificationCache(Path file) {
+        this.file = file;
+        load();
+    }
+
+    public static synchronized ClassificationCache shared() {
+        if (shared == null) {
+            shared = new ClassificationCache(Paths.get(System.getProperty("shiru.classificationCache", "classification-cache.tsv")));
+        }
+        return shared;
+    }
+
+    // Cached level for a title, or null if it has to be sent to the API
+    public String get(String version, String title) {
+        return levels.get(key(version, Titles.normalizeTitle(title)));
+    }
+
+    // Remember the level for a title and append it to the file
+    public synchronized void put(String version, String title, String level) {
+        String normalizedTitle = Titles.normalizeTitle(title);
+        if (normalizedTitle.isEmpty() || level.equals(levels.put(key(version, normalizedTitle), level))) {
+            return;
+        }
+
+        String line = version + "\t" + normalizedTitle + "\t" + level + "\n";
+        try {
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("Error writing to the classification cache: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                String[] parts = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8).split("\t");
+                if (parts.length == 3) {
+                    levels.put(key(parts[0], parts[1]), parts[2]);
+                }
+                lineStart = i + 1;
+            }
+            // A last line without its newline was cut off by a crash mid-write, its level may be cut short too.
+            // It's dropped so the next put doesn't continue it
+            if (lineStart < bytes.length) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(lineStart);
+                }
+            }
+            System.out.println("Loaded " + levels.size() + " cached classifications from " + file);
+        } catch (IOException e) {
+            System.out.println("Error reading the classification cache: " + e.getMessage());
+        }
+    }
+
+    private static String key(String version, String normalizedTitle) {
+        return version + "\t" + normalizedTitle;
+    }
+}
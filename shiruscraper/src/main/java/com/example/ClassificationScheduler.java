@@ -0,0 +1,69 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// Splits titles into batches and classifies several batches at once.
+// Pacing against the OpenAI limits is left to OpenAIClient, so batches only wait when the budget is used up.
+public class ClassificationScheduler {
+
+    public static final int DEFAULT_MAX_CONCURRENT_BATCHES = Integer.getInteger("shiru.openai.maxConcurrentBatches", 4);
+
+    private final int batchSize;
+    private final int maxConcurrentBatches;
+
+    public ClassificationScheduler(int batchSize, int maxConcurrentBatches) {
+        this.batchSize = batchSize;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    // Run classifyBatch over every batch and merge the results.
+    // Each title is identified by its index in the list, both in the batches and in the returned map.
+    public Map<Integer, String> classify(List<String> titles, Function<Map<Integer, String>, Map<Integer, String>> classifyBatch) {
+        List<Map<Integer, String>> batches = new ArrayList<>();
+        for (int i = 0; i < titles.size(); i += batchSize) {
+            Map<Integer, String> batch = new LinkedHashMap<>();
+            for (int id = i; id < Math.min(i + batchSize, titles.size()); id++) {
+                batch.put(id, titles.get(id));
+            }
+            batches.add(batch);
+        }
+
+        Map<Integer, String> results = new HashMap<>();
+        if (batches.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrentBatches, batches.size()));
+        try {
+            List<Future<Map<Integer, String>>> pending = new ArrayList<>();
+            for (Map<Integer, String> batch : batches) {
+                pending.add(executor.submit(() -> classifyBatch.apply(batch)));
+            }
+
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    results.putAll(pending.get(i).get()); // Merge batch results into the overall map
+                    System.out.println("Classified batch " + (i + 1) + " of " + pending.size());
+                } catch (ExecutionException e) {
+                    System.out.println("Error classifying batch " + (i + 1) + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Interrupted while classifying: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+}
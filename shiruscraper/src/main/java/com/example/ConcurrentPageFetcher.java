@@ -0,0 +1,72 @@
+package com.example;
+
+import org.jsoup.nodes.Element;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Fetches pages on a separate lane of worker threads per host, each lane capped at maxRequestsPerHost threads.
+// Requests wait for their host's turn in the PolitenessScheduler while holding a lane thread, so a slow or
+// throttled host only holds up its own lane and never the requests queued for other hosts.
+// Callers keep the returned futures in submission order, so results can be read back in listing order.
+public class ConcurrentPageFetcher implements AutoCloseable {
+
+    private final HtmlFetcher htmlFetcher;
+    private final int threadsPerHost;
+    private final Map<String, ExecutorService> lanes = new ConcurrentHashMap<>();
+
+    public ConcurrentPageFetcher(HtmlFetcher htmlFetcher, int threads, int maxRequestsPerHost) {
+        this.htmlFetcher = htmlFetcher;
+        this.threadsPerHost = Math.max(1, Math.min(threads, maxRequestsPerHost));
+    }
+
+    // Queue a streaming fetch of the first maxItems elements matching itemQuery (see HtmlFetcher.getItemsIfModified),
+    // the handler runs on the worker thread with the extracted items. No validators are sent, so a 304 can only come
+    // from a misbehaving server or proxy and has no items
+    public <T> Future<T> submitItems(String url, String itemQuery, Function<Element, Map<String, String>> extractItem, int maxItems,
+                                     Function<List<Map<String, String>>, T> handler) {
+        return lane(url).submit(() -> {
+            HtmlFetcher.FetchedItems fetched = htmlFetcher.getItemsIfModified(url, null, null, itemQuery, extractItem, maxItems);
+            return handler.apply(fetched != null ? fetched.items() : List.of());
+        });
+    }
+
+    // Queue any other request to url (e.g. an image download), it runs on the same lane as the host's pages
+    public <T> Future<T> submitRequest(String url, Callable<T> request) {
+        return lane(url).submit(request);
+    }
+
+    private ExecutorService lane(String url) {
+        return lanes.computeIfAbsent(hostOf(url), host -> {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(threadsPerHost, runnable -> {
+                Thread thread = new Thread(runnable, "page-fetcher-" + host + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true); // Don't keep the JVM alive if a scraper exits early
+                return thread;
+            });
+        });
+    }
+
+    // Extract the host used to group requests, falling back to the whole URL if it can't be parsed
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : url;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    @Override
+    public void close() {
+        lanes.values().forEach(ExecutorService::shutdownNow);
+    }
+}
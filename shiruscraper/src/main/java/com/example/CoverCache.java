@@ -0,0 +1,261 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+// Local copies of the book covers, so the frontend doesn't load hundreds of images from the source sites.
+// Covers are downloaded after a crawl and stored under the SHA-256 of their bytes (the cover id), an index maps each
+// source image URL to its id. The same image behind two URLs is stored once, and since an id always names the same
+// bytes the resized copies served by BookController can be cached by browsers forever.
+//
+//   originals/<id>          the downloaded image as it was served
+//   resized/<id>-<width>.jpg  re-encoded copies at the widths in WIDTHS, made on first request
+//   urls/<sha1 of url>.json   index entry for a source URL
+//
+// The directory can be changed with -Dshiru.covers.dir=<path>, which the app and the scrapers both read.
+// Prefetching after a crawl can be turned off with -Dshiru.covers.prefetch=false
+public class CoverCache {
+
+    // Widths the endpoint serves, a fixed set so requests can't ask for arbitrary resize work
+    public static final List<Integer> WIDTHS = List.of(80, 160, 320);
+
+    public static final boolean PREFETCH = Boolean.parseBoolean(System.getProperty("shiru.covers.prefetch", "true"));
+
+    private static final int MAX_COVER_BYTES = 5 * 1024 * 1024;
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final Pattern COVER_ID = Pattern.compile("[0-9a-f]{32}");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final CoverCache SHARED = new CoverCache(Paths.get(System.getProperty("shiru.covers.dir", "cover-cache")));
+
+    private final Path originals;
+    private final Path resized;
+    private final Path urls;
+    private final Map<String, Optional<UrlEntry>> entries = new ConcurrentHashMap<>();
+
+    // Index entry for one source image URL
+    public record UrlEntry(String url, String coverId, String contentType) {
+    }
+
+    // Image bytes ready to send
+    public record Cover(byte[] bytes, String contentType) {
+    }
+
+    public CoverCache(Path directory) {
+        this.originals = directory.resolve("originals");
+        this.resized = directory.resolve("resized");
+        this.urls = directory.resolve("urls");
+    }
+
+    public static CoverCache shared() {
+        return SHARED;
+    }
+
+    // Cover id for a source image URL, or null if it hasn't been downloaded
+    public String coverIdFor(String imageUrl) {
+        return entries.computeIfAbsent(imageUrl, this::load).map(UrlEntry::coverId).orElse(null);
+    }
+
+    // Set the cover id of every book, downloading the covers that aren't cached yet on the shared fetcher.
+    // Each URL is downloaded once however many books use it, books whose cover can't be downloaded keep a null id
+    public void prefetch(String source, List<Book> books, ConcurrentPageFetcher fetcher) {
+        Map<String, Future<String>> downloads = new LinkedHashMap<>();
+        int cached = 0;
+        for (Book book : books) {
+            String imageUrl = book.imageUrl();
+            if (imageUrl == null || !imageUrl.startsWith("http")) {
+                continue;
+            }
+            String coverId = coverIdFor(imageUrl);
+            if (coverId != null) {
+                book.setCoverId(coverId);
+                cached++;
+            } else {
+                downloads.computeIfAbsent(imageUrl, url -> fetcher.submitRequest(url, () -> store(url, HtmlFetcher.shared().download(url, MAX_COVER_BYTES))));
+            }
+        }
+
+        int failed = 0;
+        Map<String, String> downloaded = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<String>> download : downloads.entrySet()) {
+            try {
+                downloaded.put(download.getKey(), download.getValue().get());
+            } catch (ExecutionException e) {
+                failed++;
+                System.out.println("[" + source + "] Error downloading cover " + download.getKey() + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (Book book : books) {
+            if (book.coverId() == null && book.imageUrl() != null) {
+                book.setCoverId(downloaded.get(book.imageUrl()));
+            }
+        }
+        System.out.println("[" + source + "] Covers: " + cached + " cached, " + downloaded.size() + " downloaded, " + failed + " failed");
+    }
+
+    // Store a downloaded image and index it under its source URL, returns the cover id
+    public String store(String imageUrl, HtmlFetcher.Download download) throws IOException {
+        String contentType = download.contentType() != null ? download.contentType() : sniffContentType(download.body());
+        if (contentType == null || !contentType.startsWith("image/")) {
+            throw new IOException("Not an image (" + contentType + ")");
+        }
+
+        String coverId = coverId(download.body());
+        Path original = originals.resolve(coverId);
+        if (!Files.exists(original)) {
+            write(original, download.body());
+        }
+
+        UrlEntry entry = new UrlEntry(imageUrl, coverId, contentType);
+        write(urlFile(imageUrl), MAPPER.writeValueAsBytes(entry));
+        entries.put(imageUrl, Optional.of(entry));
+        return coverId;
+    }
+
+    // Cover resized to the given width (one of WIDTHS) and re-encoded as JPEG, or null for an unknown id.
+    // Images narrower than the width aren't scaled up, and formats ImageIO can't read are served as they are
+    public Cover resized(String coverId, int width) throws IOException {
+        if (!COVER_ID.matcher(coverId).matches() || !WIDTHS.contains(width)) {
+            return null;
+        }
+
+        Path variant = resized.resolve(coverId + "-" + width + ".jpg");
+        if (Files.exists(variant)) {
+            return new Cover(Files.readAllBytes(variant), "image/jpeg");
+        }
+
+        Path original = originals.resolve(coverId);
+        if (!Files.exists(original)) {
+            return null;
+        }
+        byte[] originalBytes = Files.readAllBytes(original);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(originalBytes));
+        if (image == null) {
+            String contentType = sniffContentType(originalBytes);
+            return new Cover(originalBytes, contentType != null ? contentType : "application/octet-stream");
+        }
+
+        byte[] jpeg = encodeJpeg(scaleToWidth(image, width));
+        write(variant, jpeg);
+        return new Cover(jpeg, "image/jpeg");
+    }
+
+    // Draw onto an opaque RGB canvas, JPEG has no alpha channel so transparent areas become white
+    private static BufferedImage scaleToWidth(BufferedImage image, int width) {
+        int targetWidth = Math.min(width, image.getWidth());
+        int targetHeight = Math.max(1, Math.round(image.getHeight() * (targetWidth / (float) image.getWidth())));
+
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, targetWidth, targetHeight);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(imageOut);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static String sniffContentType(byte[] bytes) {
+        try {
+            return URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Optional<UrlEntry> load(String imageUrl) {
+        Path file = urlFile(imageUrl);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            UrlEntry entry = MAPPER.readValue(file.toFile(), UrlEntry.class);
+            // Guard against a hash collision returning another URL's entry, and against a removed original
+            return imageUrl.equals(entry.url()) && Files.exists(originals.resolve(entry.coverId())) ? Optional.of(entry) : Optional.empty();
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable cover cache entry for " + imageUrl + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Write through a temp file so readers never see a partial image, several requests may write the same file at once
+    private static void write(Path target, byte[] bytes) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path urlFile(String imageUrl) {
+        return urls.resolve(hex("SHA-1", imageUrl.getBytes(StandardCharsets.UTF_8), 20) + ".json");
+    }
+
+    // First 16 bytes of the SHA-256, plenty to tell covers apart and short enough for URLs
+    private static String coverId(byte[] bytes) {
+        return hex("SHA-256", bytes, 16);
+    }
+
+    private static String hex(String algorithm, byte[] bytes, int length) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance(algorithm).digest(bytes), 0, length);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+}
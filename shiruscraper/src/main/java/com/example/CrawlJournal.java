@@ -0,0 +1,238 @@
+package com.example;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Append-only record of a source's run in progress, so a run that dies late (an OpenAI error, a timeout, an OOM)
+// can be restarted without redoing the work it already finished.
+// Every listing page whose detail pages are all fetched is written as one line with its finished items, and every
+// classified batch as one line with its levels. A restarted run reads the journal back, takes those pages and
+// levels from it and only fetches and classifies the rest. The journal is deleted once the run has published
+// its output, so a journal that exists at startup always belongs to an unfinished run.
+//
+//   <output directory>/crawl-journal/<source>.jsonl   {"type":"start",...} then {"type":"page",...} and {"type":"levels",...} lines
+//
+// Lines are written straight to the file, so they survive the process dying, and are fsync'd every SYNC_EVERY lines
+// so a machine crash loses at most that many. A line cut off mid-write is dropped on the next start.
+// Journals older than shiru.journal.maxAgeHours (default 24) are discarded, the listings will have moved on.
+//
+// The journals sit next to the files the run publishes, so runs into different directories (e.g. CrawlRefresher's
+// data directory and a command line crawl) never resume each other's work. -Dshiru.journal.dir=<path> puts them
+// somewhere else, journaling is turned off with -Dshiru.journal=false
+public class CrawlJournal implements AutoCloseable {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("shiru.journal", "true"));
+
+    private static final String DIRECTORY = System.getProperty("shiru.journal.dir");
+    private static final int SYNC_EVERY = Integer.getInteger("shiru.journal.syncEvery", 8);
+    private static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("shiru.journal.maxAgeHours", 24));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private final String source;
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<Integer, Entry> pages = new HashMap<>();
+    private final Map<String, String> levels = new HashMap<>();
+    private int unsyncedLines;
+
+    // Waits for each page's detail fetches off the crawl thread, one page at a time
+    private final ExecutorService pageWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "crawl-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // One journal line, unused fields are left null
+    public record Entry(String type, Long startedAt, Boolean incremental, Integer page, Integer lastPage,
+                        List<Map<String, String>> items, Map<String, String> levels) {
+    }
+
+    private CrawlJournal(String source, Path file, FileChannel channel) {
+        this.source = source;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    // Open the source's journal, resuming the unfinished run it records if it matches this run's mode.
+    // Returns null when journaling is off or the file can't be opened, the run then simply isn't journaled
+    public static CrawlJournal open(Path outputDirectory, String source, boolean incremental) {
+        if (!ENABLED) {
+            return null;
+        }
+        return openIn(DIRECTORY != null ? Paths.get(DIRECTORY) : outputDirectory.resolve("crawl-journal"), source, incremental);
+    }
+
+    static CrawlJournal openIn(Path directory, String source, boolean incremental) {
+        Path file = directory.resolve(source + ".jsonl");
+        try {
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            CrawlJournal journal = new CrawlJournal(source, file, channel);
+            if (!journal.resume(incremental)) {
+                channel.truncate(0);
+                journal.append(new Entry("start", System.currentTimeMillis(), incremental, null, null, null, null));
+            }
+            return journal;
+        } catch (IOException e) {
+            System.out.println("[" + source + "] Could not open the crawl journal, this run can't be resumed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Items and pager page count of a page finished on the interrupted run, or null if it has to be fetched
+    public synchronized Entry page(int page) {
+        return pages.get(page);
+    }
+
+    // Level a title got on the interrupted run, or null if it still has to be classified
+    public synchronized String level(String title) {
+        return levels.get(title);
+    }
+
+    // Journal a listing page once all of its detail fetches are done. Pages with a failed fetch are left out,
+    // so a restarted run fetches them again
+    public void recordPage(int page, int lastPage, List<Future<Map<String, String>>> pendingItems) {
+        pageWriter.submit(() -> {
+            List<Map<String, String>> items = new ArrayList<>(pendingItems.size());
+            for (Future<Map<String, String>> pendingItem : pendingItems) {
+                try {
+                    items.add(pendingItem.get());
+                } catch (ExecutionException e) {
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            appendQuietly(new Entry("page", null, null, page, lastPage, items, null));
+        });
+    }
+
+    // Wait until every page handed to recordPage so far is journaled
+    public void awaitPages() throws InterruptedException {
+        try {
+            pageWriter.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Journal the levels of one classified batch, keyed by title
+    public void recordLevels(Map<String, String> batchLevels) {
+        if (!batchLevels.isEmpty()) {
+            appendQuietly(new Entry("levels", null, null, null, null, null, batchLevels));
+        }
+    }
+
+    // The run published its output, nothing is left to resume
+    public void finish() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("[" + source + "] Could not delete the crawl journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Sync what is left and release the file, the journal stays on disk for the next run
+    @Override
+    public synchronized void close() {
+        pageWriter.shutdownNow();
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("[" + source + "] Error closing the crawl journal: " + e.getMessage());
+        }
+    }
+
+    // Read the journal back, returns false when it has to be started over
+    private boolean resume(boolean incremental) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        long validLength = 0;
+        Entry start = null;
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            Entry entry;
+            try {
+                entry = MAPPER.readValue(bytes, lineStart, i - lineStart, Entry.class);
+            } catch (IOException e) {
+                break; // Anything after a damaged line can't be trusted
+            }
+            if (start == null) {
+                start = entry;
+            } else if ("page".equals(entry.type())) {
+                pages.put(entry.page(), entry);
+            } else if ("levels".equals(entry.type())) {
+                levels.putAll(entry.levels());
+            }
+            lineStart = i + 1;
+            validLength = lineStart;
+        }
+
+        if (start == null || !"start".equals(start.type())) {
+            return false;
+        }
+        if (System.currentTimeMillis() - start.startedAt() > MAX_AGE_MILLIS || start.incremental() != incremental) {
+            System.out.println("[" + source + "] Discarding the crawl journal of an older or different run");
+            pages.clear();
+            levels.clear();
+            return false;
+        }
+
+        // Drop a line the interrupted run was in the middle of writing, new lines go after the last complete one
+        channel.truncate(validLength);
+        channel.position(validLength);
+        System.out.println("[" + source + "] Resuming an unfinished run: " + pages.size() + " listing pages and "
+                + levels.size() + " classified titles from the crawl journal");
+        return true;
+    }
+
+    private void appendQuietly(Entry entry) {
+        try {
+            append(entry);
+        } catch (IOException e) {
+            System.out.println("[" + source + "] Error writing to the crawl journal: " + e.getMessage());
+        }
+    }
+
+    private synchronized void append(Entry entry) throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        byte[] json = MAPPER.writeValueAsBytes(entry);
+        ByteBuffer line = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+        if (++unsyncedLines >= SYNC_EVERY || "start".equals(entry.type())) {
+            channel.force(false);
+            unsyncedLines = 0;
+        }
+    }
+}
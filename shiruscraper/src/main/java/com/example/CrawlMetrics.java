@@ -0,0 +1,156 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Meters recorded by the scrapers, OpenAIClient and the fetch layer.
+// Everything goes to Micrometer's global registry: inside the Spring Boot app that registry feeds Actuator
+// (/actuator/prometheus), and command line runs add an in-memory registry and write a run summary at the end.
+public final class CrawlMetrics {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private CrawlMetrics() {
+    }
+
+    // Time until the response headers arrived, per host and status
+    public static Timer fetchLatency(String host, int status) {
+        return Timer.builder("shiru.fetch.latency")
+                .tag("host", host)
+                .tag("status", String.valueOf(status))
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    // Requests retried after a 429 or 503, per host and status
+    public static Counter fetchRetries(String host, int status) {
+        return Counter.builder("shiru.fetch.retries")
+                .tag("host", host)
+                .tag("status", String.valueOf(status))
+                .register(Metrics.globalRegistry);
+    }
+
+    // Decoded response body bytes read, per host
+    public static DistributionSummary fetchBytes(String host) {
+        return DistributionSummary.builder("shiru.fetch.bytes")
+                .baseUnit("bytes")
+                .tag("host", host)
+                .register(Metrics.globalRegistry);
+    }
+
+    // Time spent reading and parsing a page body, per host
+    public static Timer parseTime(String host) {
+        return Timer.builder("shiru.parse.time")
+                .tag("host", host)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    // Time spent in each stage of a source's run (crawl, dedup, classify, covers, export)
+    public static Timer stage(String source, String stage) {
+        return Timer.builder("shiru.crawl.stage")
+                .tag("source", source)
+                .tag("stage", stage)
+                .register(Metrics.globalRegistry);
+    }
+
+    // Books extracted per source
+    public static Counter items(String source) {
+        return Counter.builder("shiru.crawl.items")
+                .tag("source", source)
+                .register(Metrics.globalRegistry);
+    }
+
+    // Latency of each OpenAI call, per status
+    public static Timer openAILatency(int status) {
+        return Timer.builder("shiru.openai.latency")
+                .tag("status", String.valueOf(status))
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    // Tokens reported in the response's usage field, type is "prompt" or "completion"
+    public static Counter openAITokens(String type) {
+        return Counter.builder("shiru.openai.tokens")
+                .tag("type", type)
+                .register(Metrics.globalRegistry);
+    }
+
+    // Retries of OpenAI calls, reason is the status code that caused them
+    public static Counter openAIRetries(int status) {
+        return Counter.builder("shiru.openai.retries")
+                .tag("status", String.valueOf(status))
+                .register(Metrics.globalRegistry);
+    }
+
+    // Keep meters in memory for a command line run, the Spring Boot app brings its own registry
+    public static void recordLocally() {
+        if (Metrics.globalRegistry.getRegistries().isEmpty()) {
+            Metrics.addRegistry(new SimpleMeterRegistry());
+        }
+    }
+
+    // Print the main numbers and write every shiru.* meter to a JSON file
+    public static void writeSummary(Path file, long elapsedMillis) {
+        List<Map<String, Object>> meters = new ArrayList<>();
+        List<Meter> sorted = new ArrayList<>(Metrics.globalRegistry.getMeters());
+        sorted.sort(Comparator.comparing(meter -> meter.getId().toString()));
+
+        for (Meter meter : sorted) {
+            if (!meter.getId().getName().startsWith("shiru.")) {
+                continue;
+            }
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", meter.getId().getName());
+            Map<String, String> tags = new LinkedHashMap<>();
+            for (Tag tag : meter.getId().getTags()) {
+                tags.put(tag.getKey(), tag.getValue());
+            }
+            entry.put("tags", tags);
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (Measurement measurement : meter.measure()) {
+                values.put(measurement.getStatistic().getTagValueRepresentation(), measurement.getValue());
+            }
+            entry.put("values", values);
+            meters.add(entry);
+
+            if (meter instanceof Timer timer) {
+                System.out.println(meter.getId().getName() + " " + tags + ": " + timer.count() + " calls, mean "
+                        + String.format("%.1f", timer.mean(TimeUnit.MILLISECONDS)) + " ms, max "
+                        + String.format("%.1f", timer.max(TimeUnit.MILLISECONDS)) + " ms");
+            } else if (meter instanceof Counter counter) {
+                System.out.println(meter.getId().getName() + " " + tags + ": " + (long) counter.count());
+            } else if (meter instanceof DistributionSummary summary) {
+                System.out.println(meter.getId().getName() + " " + tags + ": " + (long) summary.totalAmount() + " total over " + summary.count());
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("elapsedMillis", elapsedMillis);
+        summary.put("meters", meters);
+        try {
+            MAPPER.writeValue(file.toFile(), summary);
+            System.out.println("Run summary written to " + file);
+        } catch (IOException e) {
+            System.out.println("Error writing the run summary: " + e.getMessage());
+        }
+    }
+}
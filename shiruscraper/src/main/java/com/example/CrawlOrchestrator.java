@@ -0,0 +1,715 @@
+package com.example;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//cmd to run every scraper in one JVM, pass source names (honto animate ehonnavi) to only run some of them
+//mvn clean compile exec:java -D"exec.mainClass=com.example.CrawlOrchestrator" -D"exec.args=-Dfile.encoding=UTF-8"
+
+// Runs several SourceScrapers at once in one JVM.
+// Every source gets its own thread for walking its listing pages, while detail pages from all sources go through
+// one shared fetcher and HTTP client. Once every source is crawled, listings of the same book on different sources
+// are merged and each book is classified once, then each source exports all of its books to its own file, with the
+// book's listings on the other sources as references.
+public class CrawlOrchestrator {
+
+    // Detail page fetch settings shared by all sources, a host only sees MAX_REQUESTS_PER_HOST requests at a time
+    private static final int DETAIL_FETCH_THREADS = 8;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+
+    // Limit each classification batch to 20 titles to avoid token limits or large responses
+    private static final int CLASSIFICATION_BATCH_SIZE = 20;
+
+    // Listing page cap for every source instead of each source's own SourceScraper.maxListingPages, null when not set
+    private static final Integer MAX_LISTING_PAGES = Integer.getInteger("shiru.crawl.maxPages");
+
+    // Source tag of the stages that run over every source's books at once
+    private static final String ALL_SOURCES = "all";
+
+    // Field of the entries pager links produce, they are split from the books when a listing page is read
+    private static final String PAGER_PAGE_FIELD = "pagerPage";
+
+    // Per-book log lines are off by default, printing every title slows down large crawls. Enable with -Dshiru.log.items=true
+    private static final boolean LOG_ITEMS = Boolean.getBoolean("shiru.log.items");
+
+    // Every source that can be crawled
+    public static final List<SourceScraper> SOURCES = List.of(new WebScraper(), new AniOnline(), new EhonnaviScraper());
+
+    private final List<SourceScraper> sources;
+    private final Path outputDirectory;
+    private final int fetchThreads;
+    private final boolean incremental;
+    private final HtmlFetcher htmlFetcher;
+    private final PageCache pageCache;
+
+    // Outcome of one source's crawl, published is false when the output file was left as it was
+    public record SourceResult(String source, int newBooks, boolean published) {
+    }
+
+    // Write into the working directory, incremental mode comes from -Dshiru.crawl.incremental
+    public CrawlOrchestrator(List<SourceScraper> sources) {
+        this(sources, Paths.get(""), DETAIL_FETCH_THREADS, CrawlState.incremental());
+    }
+
+    public CrawlOrchestrator(List<SourceScraper> sources, Path outputDirectory, int fetchThreads, boolean incremental) {
+        this(sources, outputDirectory, fetchThreads, incremental, HtmlFetcher.shared(), PageCache.shared());
+    }
+
+    // Crawl with a fetcher and page cache of its own, e.g. a fetcher answered by a ReplayServer
+    CrawlOrchestrator(List<SourceScraper> sources, Path outputDirectory, int fetchThreads, boolean incremental,
+                      HtmlFetcher htmlFetcher, PageCache pageCache) {
+        this.sources = sources;
+        this.outputDirectory = outputDirectory;
+        this.fetchThreads = fetchThreads;
+        this.incremental = incremental;
+        this.htmlFetcher = htmlFetcher;
+        this.pageCache = pageCache;
+    }
+
+    public static void main(String[] args) {
+        List<SourceScraper> selected = new ArrayList<>();
+        for (SourceScraper source : SOURCES) {
+            if (args.length == 0 || List.of(args).contains(source.source())) {
+                selected.add(source);
+            }
+        }
+        if (selected.isEmpty()) {
+            System.out.println("No matching sources, known sources are honto, animate and ehonnavi");
+            return;
+        }
+        runFromCommandLine(selected);
+    }
+
+    // Run the sources with metrics kept in memory, then write them to crawl-metrics.json
+    public static void runFromCommandLine(List<SourceScraper> sources) {
+        CrawlMetrics.recordLocally();
+        long startNanos = System.nanoTime();
+        new CrawlOrchestrator(sources).run();
+        CrawlMetrics.writeSummary(Paths.get("crawl-metrics.json"), (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    // Crawl every source concurrently, merge the listings of the same book across all sources, classify each book
+    // once, then publish every source concurrently. Returns once all of them are done
+    public List<SourceResult> run() {
+        long startNanos = System.nanoTime();
+        List<SourceResult> results = new ArrayList<>();
+        List<SourceCrawl> crawls = new ArrayList<>();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(sources.size(),
+                runnable -> new Thread(runnable, "crawl-" + threadCount.incrementAndGet()));
+
+        try (ConcurrentPageFetcher fetcher = new ConcurrentPageFetcher(htmlFetcher, fetchThreads, MAX_REQUESTS_PER_HOST)) {
+            List<Future<SourceCrawl>> pendingCrawls = new ArrayList<>();
+            for (SourceScraper source : sources) {
+                // Sources that ask for a slower pace only slow down their own host
+                htmlFetcher.politeness().limit(URI.create(source.listingUrl(1)).getHost(), source.maxRequestsPerSecond());
+                pendingCrawls.add(executor.submit(() -> crawlSource(source, fetcher)));
+            }
+            for (int i = 0; i < pendingCrawls.size(); i++) {
+                try {
+                    crawls.add(pendingCrawls.get(i).get());
+                } catch (ExecutionException e) {
+                    System.out.println("[" + sources.get(i).source() + "] Crawl failed: " + e.getCause());
+                    results.add(new SourceResult(sources.get(i).source(), 0, false));
+                }
+            }
+
+            // A book listed on several sources is merged into the listing of the first source in the sources order,
+            // so it's classified once and every listing gets its level
+            List<Book> crawled = new ArrayList<>();
+            Map<String, CrawlJournal> journals = new HashMap<>();
+            for (SourceCrawl crawl : crawls) {
+                crawled.addAll(crawl.books());
+                if (crawl.journal() != null) {
+                    journals.put(crawl.source().source(), crawl.journal());
+                }
+            }
+            List<Book> books = CrawlMetrics.stage(ALL_SOURCES, "dedup").record(() -> TitleDeduplicator.merge(crawled));
+            if (books.size() < crawled.size()) {
+                System.out.println("Merged " + (crawled.size() - books.size()) + " duplicate listings across sources");
+            }
+            CrawlMetrics.stage(ALL_SOURCES, "classify").record(() -> classify(books, journals));
+
+            Map<String, List<Book>> booksBySource = booksBySource(crawled, books);
+            List<Future<SourceResult>> pendingResults = new ArrayList<>();
+            for (SourceCrawl crawl : crawls) {
+                List<Book> sourceBooks = booksBySource.getOrDefault(crawl.source().source(), new ArrayList<>());
+                pendingResults.add(executor.submit(() -> publish(crawl, sourceBooks, fetcher)));
+            }
+            for (int i = 0; i < pendingResults.size(); i++) {
+                try {
+                    results.add(pendingResults.get(i).get());
+                } catch (ExecutionException e) {
+                    System.out.println("[" + crawls.get(i).source().source() + "] Publishing failed: " + e.getCause());
+                    results.add(new SourceResult(crawls.get(i).source().source(), 0, false));
+                }
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Interrupted while crawling: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            // Journals of runs that didn't publish stay on disk for the next run
+            for (SourceCrawl crawl : crawls) {
+                if (crawl.journal() != null) {
+                    crawl.journal().close();
+                }
+            }
+        }
+
+        int newBooks = 0;
+        for (SourceResult result : results) {
+            newBooks += result.newBooks();
+            System.out.println("[" + result.source() + "] " + result.newBooks() + " new books, "
+                    + (result.published() ? "published" : "output unchanged"));
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        System.out.println("Crawl finished in " + elapsedMillis + " ms, " + newBooks + " new books ("
+                + String.format("%.1f", newBooks * 1000.0 / Math.max(elapsedMillis, 1)) + " books/s)");
+        return results;
+    }
+
+    // A source's new listings along with what its publish step needs
+    private record SourceCrawl(SourceScraper source, Path outputFile, CrawlState crawlState, CrawlJournal journal, List<Book> books) {
+    }
+
+    private SourceCrawl crawlSource(SourceScraper source, ConcurrentPageFetcher fetcher) throws InterruptedException {
+        Path outputFile = outputDirectory.resolve(source.outputFile());
+
+        // Incremental runs stop at the first page with nothing new and keep the previous run's books
+        CrawlState crawlState = incremental ? CrawlState.load(outputFile.toString(), source.source(), source.knownKeyField()) : null;
+
+        // Pages and batches an interrupted run already finished are taken from its journal
+        CrawlJournal journal = CrawlJournal.open(outputDirectory, source.source(), incremental);
+        try {
+            long crawlStartNanos = System.nanoTime();
+            List<Book> books = crawl(source, fetcher, crawlState, journal);
+            CrawlMetrics.stage(source.source(), "crawl").record(System.nanoTime() - crawlStartNanos, TimeUnit.NANOSECONDS);
+            return new SourceCrawl(source, outputFile, crawlState, journal, books);
+        } catch (InterruptedException | RuntimeException e) {
+            if (journal != null) {
+                journal.close();
+            }
+            throw e;
+        }
+    }
+
+    // Publish the source's books, merged and classified across all sources, behind its previous books
+    private static SourceResult publish(SourceCrawl crawl, List<Book> books, ConcurrentPageFetcher fetcher) {
+        SourceScraper source = crawl.source();
+        if (crawl.books().isEmpty()) {
+            // Nothing new (or nothing could be fetched), the published file stays as it is
+            System.out.println("[" + source.source() + "] No new books found, keeping " + source.outputFile() + " as it is");
+            if (crawl.journal() != null) {
+                crawl.journal().finish();
+            }
+            return new SourceResult(source.source(), 0, false);
+        }
+        int newBooks = books.size();
+
+        // Keep the books from the previous run behind the new ones
+        if (crawl.crawlState() != null) {
+            crawl.crawlState().appendPreviousBooks(crawl.books(), books);
+        }
+
+        // Download the covers the cover cache doesn't have yet so the frontend can load them from the app
+        if (CoverCache.PREFETCH) {
+            CrawlMetrics.stage(source.source(), "covers").record(() -> CoverCache.shared().prefetch(source.source(), books, fetcher));
+        }
+
+        boolean published = CrawlMetrics.stage(source.source(), "export").record(() -> export(source, books, crawl.outputFile()));
+        if (published && crawl.journal() != null) {
+            crawl.journal().finish();
+        }
+        return new SourceResult(source.source(), newBooks, published);
+    }
+
+    // Walk the listing pages and return the new books in listing order, detail pages are fetched in the background.
+    // Page 1 is fetched first, its pager links give the number of pages and the rest are then fetched concurrently.
+    // Incremental runs, and sources whose pages have no pager links, go page by page instead so they can stop early.
+    // Pages in the journal are read from it instead of being fetched, and finished pages are added to it
+    private List<Book> crawl(SourceScraper source, ConcurrentPageFetcher fetcher, CrawlState crawlState,
+                             CrawlJournal journal) throws InterruptedException {
+        String name = source.source();
+        List<Future<Map<String, String>>> pendingItems = new ArrayList<>();
+        ListingReader reader = new ListingReader(source, journal, htmlFetcher, pageCache);
+
+        ListingPage first;
+        try {
+            first = reader.fetch(1);
+        } catch (IOException e) {
+            System.out.println("[" + name + "] Error fetching the website: " + e.getMessage());
+            return List.of();
+        }
+        boolean done = addListingItems(reader, 1, first, fetcher, crawlState, pendingItems);
+
+        if (!done && crawlState == null && first.lastPage() > 0) {
+            System.out.println("[" + name + "] Listing has " + first.lastPage() + " pages");
+            fanOutListingPages(reader, first.lastPage(), fetcher, pendingItems);
+        } else if (!done) {
+            if (first.lastPage() == 0) {
+                System.out.println("[" + name + "] No pager links on page 1, reading pages until one has no books");
+            }
+            walkListingPages(reader, first.lastPage(), fetcher, crawlState, pendingItems);
+        }
+
+        // Collect the items in the same order they appeared in the listings
+        List<Book> books = new ArrayList<>(pendingItems.size());
+        for (Future<Map<String, String>> pendingItem : pendingItems) {
+            try {
+                Map<String, String> item = pendingItem.get();
+                String title = item.get("title");
+                if (title == null || title.isEmpty()) {
+                    System.out.println("[" + name + "] Missing title for " + item.get("bookUrl") + ". Skipping.");
+                    continue;
+                }
+
+                if (LOG_ITEMS) {
+                    System.out.println("[" + name + "] Fetched Title: " + title);
+                }
+                CrawlMetrics.items(name).increment();
+                books.add(new Book(name, source.defaultLevel(), title, item.get("imageUrl"), item.get("bookUrl")));
+            } catch (ExecutionException e) {
+                System.out.println("[" + name + "] Error fetching the book detail page: " + e.getCause().getMessage());
+            }
+        }
+        if (journal != null) {
+            journal.awaitPages();
+        }
+        return books;
+    }
+
+    // Fetch pages 2..lastPage at once under the fetcher's per-host limit and add their items in page order.
+    // Pages whose pager shows a higher page number than known extend the crawl, for pagers that only show nearby pages
+    private static void fanOutListingPages(ListingReader reader, int lastPage, ConcurrentPageFetcher fetcher,
+                                           List<Future<Map<String, String>>> pendingItems) throws InterruptedException {
+        SourceScraper source = reader.source();
+        Map<Integer, Future<ListingPage>> pages = new HashMap<>();
+        int scheduled = schedulePages(reader, fetcher, pages, 1, lastPage); // Paced per host by the PolitenessScheduler
+
+        for (int page = 2; page <= scheduled; page++) {
+            try {
+                ListingPage listing = pages.remove(page).get();
+                addListingItems(reader, page, listing, fetcher, null, pendingItems);
+                scheduled = schedulePages(reader, fetcher, pages, scheduled, listing.lastPage());
+            } catch (ExecutionException e) {
+                System.out.println("[" + source.source() + "] Error fetching listing page " + page + ": " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    // Queue the pages after scheduled up to lastPage, returns the new last scheduled page
+    private static int schedulePages(ListingReader reader, ConcurrentPageFetcher fetcher, Map<Integer, Future<ListingPage>> pages,
+                                     int scheduled, int lastPage) {
+        int target = reader.capped(lastPage);
+        for (int page = scheduled + 1; page <= target; page++) {
+            int pageNumber = page;
+            pages.put(page, fetcher.submitRequest(reader.source().listingUrl(page), () -> reader.fetch(pageNumber)));
+        }
+        return Math.max(scheduled, target);
+    }
+
+    // Fetch pages 2, 3, ... one at a time. Stops at the last page the pagers showed, at the first page with nothing new
+    // (incremental runs), or, when there are no pager links, at the first page without items
+    private static void walkListingPages(ListingReader reader, int lastPage, ConcurrentPageFetcher fetcher, CrawlState crawlState,
+                                         List<Future<Map<String, String>>> pendingItems) throws InterruptedException {
+        SourceScraper source = reader.source();
+        String name = source.source();
+
+        for (int page = 2; lastPage == 0 || page <= lastPage; page++) {
+            if (page > reader.capped(page)) {
+                break;
+            }
+            ListingPage listing;
+            try {
+                listing = reader.fetch(page);
+            } catch (HttpStatusException e) {
+                if (e.getStatusCode() == 404 && lastPage == 0) {
+                    System.out.println("[" + name + "] Page " + page + " doesn't exist, page " + (page - 1) + " was the last");
+                    break;
+                }
+                System.out.println("[" + name + "] Error fetching the website: " + e.getMessage());
+                continue;
+            } catch (IOException e) {
+                System.out.println("[" + name + "] Error fetching the website: " + e.getMessage());
+                if (lastPage == 0) {
+                    break; // Without a page count there's no telling whether the following pages exist
+                }
+                continue;
+            }
+
+            if (lastPage == 0 && listing.items().isEmpty()) {
+                System.out.println("[" + name + "] Page " + page + " has no books, page " + (page - 1) + " was the last");
+                break;
+            }
+            lastPage = Math.max(lastPage, listing.lastPage());
+            if (addListingItems(reader, page, listing, fetcher, crawlState, pendingItems)) {
+                break;
+            }
+        }
+    }
+
+    // Queue the detail fetches for a page's new items, returns true when an incremental crawl should stop here
+    private static boolean addListingItems(ListingReader reader, int page, ListingPage listing, ConcurrentPageFetcher fetcher,
+                                           CrawlState crawlState, List<Future<Map<String, String>>> pendingItems) {
+        SourceScraper source = reader.source();
+        CrawlJournal journal = reader.journal();
+        // Journaled items are already filtered and have their details
+        if (listing.journaled()) {
+            for (Map<String, String> item : listing.items()) {
+                pendingItems.add(CompletableFuture.completedFuture(item));
+            }
+            return false;
+        }
+
+        if (crawlState != null && crawlState.allKnown(listing.items())) {
+            System.out.println("[" + source.source() + "] Page " + page + " has no new books, stopping");
+            return true;
+        }
+
+        List<Future<Map<String, String>>> pagePendingItems = new ArrayList<>();
+        for (Map<String, String> listingItem : listing.items()) {
+            // Known books are carried over from the previous results instead
+            if (crawlState != null && crawlState.isKnown(listingItem)) {
+                continue;
+            }
+            pagePendingItems.add(enrich(source, listingItem, fetcher, reader.pageCache()));
+        }
+        pendingItems.addAll(pagePendingItems);
+        if (journal != null) {
+            journal.recordPage(page, listing.lastPage(), pagePendingItems);
+        }
+        return false;
+    }
+
+    // Books on one listing page, and the highest page number its pager links point to (0 when it has none).
+    // Journaled pages come from the crawl journal of an interrupted run
+    record ListingPage(List<Map<String, String>> items, int lastPage, boolean journaled) {
+    }
+
+    // Fetches a source's listing pages, reading the pager links along with the items in the same pass.
+    // Pager links are any links to the same listing path with the source's page parameter, so this doesn't depend
+    // on each site's pager markup. Their page numbers are stored in the page cache with the items, so a page that
+    // comes back 304 Not Modified still knows the page count
+    static final class ListingReader {
+        private final SourceScraper source;
+        private final CrawlJournal journal;
+        private final HtmlFetcher htmlFetcher;
+        private final PageCache pageCache;
+        private final String pagerQuery;
+        private final Evaluator pagerLink;
+        private final Pattern pageNumber;
+        private final int maxPages;
+        private boolean capReported;
+
+        ListingReader(SourceScraper source, CrawlJournal journal, HtmlFetcher htmlFetcher, PageCache pageCache) {
+            this.source = source;
+            this.journal = journal;
+            this.htmlFetcher = htmlFetcher;
+            this.pageCache = pageCache;
+            this.pagerQuery = "a[href*=" + source.pageParameter() + "=]";
+            this.pagerLink = QueryParser.parse(pagerQuery);
+            this.maxPages = MAX_LISTING_PAGES != null ? MAX_LISTING_PAGES : source.maxListingPages();
+            this.pageNumber = Pattern.compile("[?&]" + Pattern.quote(source.pageParameter()) + "=(\\d{1,5})(?:&|#|$)");
+        }
+
+        SourceScraper source() {
+            return source;
+        }
+
+        CrawlJournal journal() {
+            return journal;
+        }
+
+        PageCache pageCache() {
+            return pageCache;
+        }
+
+        ListingPage fetch(int page) throws IOException {
+            CrawlJournal.Entry journaled = journal != null ? journal.page(page) : null;
+            if (journaled != null) {
+                return new ListingPage(journaled.items(), journaled.lastPage(), true);
+            }
+
+            String url = source.listingUrl(page);
+            System.out.println("[" + source.source() + "] Processing page " + page + ": " + url);
+
+            // Unchanged listing pages come straight from the page cache without being parsed
+            List<Map<String, String>> extracted = pageCache.fetchItems(htmlFetcher, url, source.extractorVersion(),
+                    source.itemSelector() + ", " + pagerQuery,
+                    element -> pagerLink.matches(element.root(), element) ? pagerEntry(url, element) : source.extractItem(element));
+
+            List<Map<String, String>> items = new ArrayList<>(extracted.size());
+            int lastPage = 0;
+            for (Map<String, String> item : extracted) {
+                String linkedPage = item.get(PAGER_PAGE_FIELD);
+                if (linkedPage != null) {
+                    lastPage = Math.max(lastPage, Integer.parseInt(linkedPage));
+                } else {
+                    items.add(item);
+                }
+            }
+            return new ListingPage(items, lastPage, false);
+        }
+
+        // Page number a pager link points to, null for links to other pages of the site
+        private Map<String, String> pagerEntry(String listingUrl, Element link) {
+            String href = link.absUrl("href");
+            if (!pathOf(href).equals(pathOf(listingUrl))) {
+                return null;
+            }
+            Matcher matcher = pageNumber.matcher(href);
+            return matcher.find() ? Map.of(PAGER_PAGE_FIELD, matcher.group(1)) : null;
+        }
+
+        // Limit a page number to the source's page cap, saying so the first time it cuts a crawl short
+        int capped(int page) {
+            if (page > maxPages) {
+                if (!capReported) {
+                    System.out.println("[" + source.source() + "] Listing has more than " + maxPages
+                            + " pages, only the first " + maxPages + " are crawled (-Dshiru.crawl.maxPages)");
+                    capReported = true;
+                }
+                return maxPages;
+            }
+            return page;
+        }
+
+        private static String pathOf(String url) {
+            try {
+                String path = URI.create(url).getPath();
+                return path != null ? path : "";
+            } catch (IllegalArgumentException e) {
+                return "";
+            }
+        }
+    }
+
+    // Add the source's detail fields to a listing item, fetching the detail page on the shared fetcher if needed
+    private static Future<Map<String, String>> enrich(SourceScraper source, Map<String, String> item, ConcurrentPageFetcher fetcher,
+                                                      PageCache pageCache) {
+        String detailUrl = source.detailUrl(item);
+        if (detailUrl == null) {
+            return CompletableFuture.completedFuture(item);
+        }
+
+        // Detail pages that were seen on an earlier run are not fetched again
+        PageCache.CachedPage knownDetail = pageCache.get(detailUrl, source.extractorVersion());
+        if (knownDetail != null && !knownDetail.items().isEmpty()) {
+            return CompletableFuture.completedFuture(merge(item, knownDetail.items().get(0)));
+        }
+
+        // Only the first element matching the detail selector is needed, the page isn't read past it
+        return fetcher.submitItems(detailUrl, source.detailSelector(), source::extractDetail, 1, details -> {
+            Map<String, String> detail = details.isEmpty() ? Map.of() : details.get(0);
+            if (!detail.isEmpty()) {
+                pageCache.put(detailUrl, source.extractorVersion(), null, null, List.of(detail));
+            }
+            return merge(item, detail);
+        });
+    }
+
+    private static Map<String, String> merge(Map<String, String> item, Map<String, String> detail) {
+        Map<String, String> merged = new HashMap<>(item);
+        merged.putAll(detail);
+        return merged;
+    }
+
+    // Set the JLPT level of every book with a listing on a source that has a classifier. Books were merged across
+    // sources before this, so each is classified once and its merged listings take the same level. A book is
+    // classified with the prompt and cache version of its first listing on such a source, which is the canonical
+    // listing's source unless that one has no classifier. Titles classified on an earlier run come from the journal
+    // or the cache and only the rest go to OpenAI. Batches share the OpenAI rate budget, and each finished batch is
+    // journaled.
+    private void classify(List<Book> books, Map<String, CrawlJournal> journals) {
+        Map<String, SourceScraper> classifyingSources = new HashMap<>();
+        for (SourceScraper source : sources) {
+            if (source.classifier() != null) {
+                classifyingSources.put(source.source(), source);
+            }
+        }
+
+        Map<SourceScraper, List<Book>> booksByClassifyingSource = new LinkedHashMap<>();
+        for (Book book : books) {
+            for (Book listing : listingsOf(book)) {
+                SourceScraper classifying = classifyingSources.get(listing.source());
+                if (classifying != null) {
+                    booksByClassifyingSource.computeIfAbsent(classifying, unused -> new ArrayList<>()).add(book);
+                    break;
+                }
+            }
+        }
+        booksByClassifyingSource.forEach((classifying, classifiedBooks) -> classify(classifying, classifiedBooks, journals));
+
+        for (Book book : books) {
+            for (Book duplicate : book.duplicates()) {
+                duplicate.setLevel(book.level());
+            }
+        }
+    }
+
+    private static void classify(SourceScraper classifying, List<Book> books, Map<String, CrawlJournal> journals) {
+        String name = classifying.source();
+        String classificationVersion = classifying.classificationVersion();
+        ClassificationCache classificationCache = ClassificationCache.shared();
+
+        Map<String, List<Book>> uncachedBooksByTitle = new LinkedHashMap<>(); // Books sharing a title are classified once
+        Map<String, CrawlJournal> journalsByTitle = new HashMap<>();
+        int cacheHits = 0;
+        for (Book book : books) {
+            String journaledLevel = null;
+            for (Book listing : listingsOf(book)) {
+                CrawlJournal journal = journals.get(listing.source());
+                if (journaledLevel == null && journal != null) {
+                    journaledLevel = journal.level(book.title());
+                }
+            }
+            JlptLevel cachedLevel = JlptLevel.fromLabel(journaledLevel != null ? journaledLevel : classificationCache.get(classificationVersion, book.title()));
+            if (cachedLevel != null && cachedLevel != JlptLevel.NA) {
+                book.setLevel(cachedLevel);
+                cacheHits++;
+            } else {
+                uncachedBooksByTitle.computeIfAbsent(book.title(), title -> new ArrayList<>()).add(book);
+                journalsByTitle.putIfAbsent(book.title(), journals.get(book.source()));
+            }
+        }
+        List<String> uncachedTitles = new ArrayList<>(uncachedBooksByTitle.keySet());
+        System.out.println("[" + name + "] Classification cache hits: " + cacheHits + ", misses: " + (books.size() - cacheHits));
+
+        ClassificationScheduler scheduler = new ClassificationScheduler(CLASSIFICATION_BATCH_SIZE, ClassificationScheduler.DEFAULT_MAX_CONCURRENT_BATCHES);
+        Map<Integer, String> levelsById = scheduler.classify(uncachedTitles, batch -> {
+            Map<Integer, String> batchLevels = classifying.classifier().classifyBatch(batch);
+            // Each title goes into the journal of the source its book is published by
+            Map<CrawlJournal, Map<String, String>> levelsByJournal = new HashMap<>();
+            batchLevels.forEach((id, level) -> {
+                String title = uncachedTitles.get(id);
+                CrawlJournal journal = journalsByTitle.get(title);
+                if (journal != null) {
+                    levelsByJournal.computeIfAbsent(journal, unused -> new HashMap<>()).put(title, level);
+                }
+            });
+            levelsByJournal.forEach(CrawlJournal::recordLevels);
+            return batchLevels;
+        });
+
+        // Each result comes back with the id of the title it belongs to, so it maps straight to its books
+        for (Map.Entry<Integer, String> entry : levelsById.entrySet()) {
+            String title = uncachedTitles.get(entry.getKey());
+            JlptLevel jlptLevel = JlptLevel.fromLabel(entry.getValue());
+
+            // Set the level on every book with this title
+            for (Book book : uncachedBooksByTitle.get(title)) {
+                book.setLevel(jlptLevel);
+            }
+            if (LOG_ITEMS) {
+                System.out.println("[" + name + "] Classified book: " + title + " as JLPT level " + jlptLevel.label());
+            }
+
+            classificationCache.put(classificationVersion, title, jlptLevel.label());
+        }
+        System.out.println("[" + name + "] Classified " + levelsById.size() + " of " + uncachedTitles.size() + " uncached titles");
+    }
+
+    // Every source's books in its own listing order, each of the source's listings is published by the source.
+    // A book merged across sources is published by each of them: the first listing of a source carries that source's
+    // other listings of the book as duplicates, followed by the first listing of every other source as a reference
+    private static Map<String, List<Book>> booksBySource(List<Book> crawled, List<Book> merged) {
+        Map<Book, Book> published = new IdentityHashMap<>();
+        for (Book book : merged) {
+            if (book.duplicates().isEmpty()) {
+                published.put(book, book);
+                continue;
+            }
+            // The merged book holds every listing, so each source gets a copy of its first listing to attach to
+            Map<String, Book> firsts = new LinkedHashMap<>();
+            for (Book listing : listingsOf(book)) {
+                Book first = firsts.get(listing.source());
+                if (first == null) {
+                    first = copyOf(listing);
+                    firsts.put(listing.source(), first);
+                    published.put(listing, first);
+                } else {
+                    first.addDuplicate(copyOf(listing));
+                }
+            }
+            for (Book first : firsts.values()) {
+                for (Book other : firsts.values()) {
+                    if (other != first) {
+                        first.addDuplicate(copyOf(other));
+                    }
+                }
+            }
+        }
+
+        // Listings that are another listing's duplicate aren't published on their own
+        Map<String, List<Book>> booksBySource = new HashMap<>();
+        for (Book listing : crawled) {
+            Book book = published.get(listing);
+            if (book != null) {
+                booksBySource.computeIfAbsent(listing.source(), unused -> new ArrayList<>()).add(book);
+            }
+        }
+        return booksBySource;
+    }
+
+    private static Book copyOf(Book book) {
+        return new Book(book.source(), book.level(), book.title(), book.imageUrl(), book.bookUrl());
+    }
+
+    // The book followed by the listings merged into it
+    private static List<Book> listingsOf(Book book) {
+        if (book.duplicates().isEmpty()) {
+            return List.of(book);
+        }
+        List<Book> listings = new ArrayList<>(book.duplicates().size() + 1);
+        listings.add(book);
+        listings.addAll(book.duplicates());
+        return listings;
+    }
+
+    // Stream the books to the source's output file grouped by level, returns false if the file couldn't be written
+    private static boolean export(SourceScraper source, List<Book> books, Path outputFile) {
+        try (BookJsonWriter writer = new BookJsonWriter(outputFile)) {
+            for (Map.Entry<JlptLevel, List<Book>> entry : JlptLevel.bucket(books).entrySet()) {
+                // Classified sources always list every level, the others only the levels they have books in
+                if (entry.getValue().isEmpty() && source.classifier() == null) {
+                    continue;
+                }
+                writer.startLevel(entry.getKey().label());
+                for (Book book : entry.getValue()) {
+                    writer.writeBook(book);
+                }
+                writer.endLevel();
+            }
+            writer.commit();
+            System.out.println("[" + source.source() + "] Results saved to " + outputFile + " (" + books.size() + " books)");
+            return true;
+        } catch (IOException e) {
+            System.out.println("[" + source.source() + "] Error writing to JSON file: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs the scrapers inside the app on a cron schedule when shiru.refresh.enabled=true.
+// The crawl runs on its own worker thread, so neither the scheduler nor request threads ever wait for it, and only
+// one crawl runs at a time. Until a crawl publishes, requests keep getting the previous datasets from DatasetStore;
+// each finished file is then swapped in as a whole.
+@Component
+@ConditionalOnProperty(name = "shiru.refresh.enabled", havingValue = "true")
+public class CrawlRefresher implements DisposableBean {
+
+    private final DatasetStore datasetStore;
+    private final String dataDirectory;
+    private final int fetchThreads;
+    private final boolean incremental;
+    private final ExecutorService worker;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CrawlRefresher(DatasetStore datasetStore,
+                          @Value("${shiru.data.dir:.}") String dataDirectory,
+                          @Value("${shiru.refresh.fetch-threads:4}") int fetchThreads,
+                          @Value("${shiru.refresh.incremental:true}") boolean incremental) {
+        this.datasetStore = datasetStore;
+        this.dataDirectory = dataDirectory;
+        this.fetchThreads = fetchThreads;
+        this.incremental = incremental;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawl-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Start a crawl in the background, skipped if the previous one is still going
+    @Scheduled(cron = "${shiru.refresh.cron:0 0 */6 * * *}")
+    public void scheduleRefresh() {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("Previous refresh is still running, skipping this one");
+            return;
+        }
+
+        worker.execute(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                System.out.println("Refresh failed: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void refresh() {
+        System.out.println("Starting scheduled refresh");
+        CrawlOrchestrator orchestrator = new CrawlOrchestrator(CrawlOrchestrator.SOURCES, Paths.get(dataDirectory), fetchThreads, incremental);
+        List<CrawlOrchestrator.SourceResult> results = orchestrator.run();
+
+        // Serve the new files right away instead of waiting for the next poll
+        datasetStore.reloadChanged();
+        System.out.println("Scheduled refresh finished, " + results.stream().filter(CrawlOrchestrator.SourceResult::published).count()
+                + " of " + results.size() + " datasets updated");
+    }
+
+    @Override
+    public void destroy() {
+        worker.shutdownNow();
+    }
+}
@@ -0,0 +1,143 @@
+package com.example;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// What a source's previous run published, used by incremental crawls.
+// The known books are read back from the source's own output file, so the state can never drift from what is
+// actually being served. Listings are newest first, so a scraper can stop paginating at the first page where
+// every book is already known and merge the new books in front of the previous ones.
+//
+// Incremental mode is enabled with -Dshiru.crawl.incremental=true
+public class CrawlState {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String source;
+    private final String keyField;
+    private final List<Book> previousBooks = new ArrayList<>();
+    private final Set<String> knownKeys = new HashSet<>();
+
+    private CrawlState(String source, String keyField, Map<String, List<Map<String, Object>>> previousEntries) {
+        this.source = source;
+        this.keyField = keyField;
+        for (Map.Entry<String, List<Map<String, Object>>> entry : previousEntries.entrySet()) {
+            JlptLevel level = JlptLevel.fromLabel(entry.getKey());
+            if (level == null) {
+                System.out.println("Ignoring unknown level " + entry.getKey() + " in the previous results");
+                continue;
+            }
+            for (Map<String, Object> book : entry.getValue()) {
+                Book previousBook = readBook(source, level, book);
+                previousBook.setCoverId(text(book, "coverId"));
+                // Listings merged into the book were seen too. Listings of other sources are references to books
+                // those sources publish themselves, they keep their source and aren't known to this one
+                for (Map<?, ?> fields : duplicates(book)) {
+                    String duplicateSource = text(fields, "source");
+                    previousBook.addDuplicate(readBook(duplicateSource != null ? duplicateSource : source, level, fields));
+                }
+                previousBooks.add(previousBook);
+            }
+        }
+    }
+
+    private Book readBook(String bookSource, JlptLevel level, Map<?, ?> fields) {
+        Book book = new Book(bookSource, level, text(fields, "title"), text(fields, "imageUrl"), text(fields, "bookUrl"));
+        String key = text(fields, keyField);
+        if (key != null && bookSource.equals(source)) {
+            knownKeys.add(key);
+        }
+        return book;
+    }
+
+    private static List<Map<?, ?>> duplicates(Map<String, Object> book) {
+        List<Map<?, ?>> duplicates = new ArrayList<>();
+        if (book.get("duplicates") instanceof List<?> entries) {
+            for (Object entry : entries) {
+                if (entry instanceof Map<?, ?> fields) {
+                    duplicates.add(fields);
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private static String text(Map<?, ?> fields, String field) {
+        return fields.get(field) instanceof String value ? value : null;
+    }
+
+    public static boolean incremental() {
+        return Boolean.getBoolean("shiru.crawl.incremental");
+    }
+
+    // Load the books the source published on its last run, books are identified by keyField ("bookUrl" or "title")
+    public static CrawlState load(String fileName, String source, String keyField) {
+        CrawlState state = new CrawlState(source, keyField, read(fileName));
+        System.out.println("Known books from the previous run: " + state.knownKeys.size());
+        return state;
+    }
+
+    private static Map<String, List<Map<String, Object>>> read(String fileName) {
+        Path file = Paths.get(fileName);
+        if (!Files.exists(file)) {
+            return Collections.emptyMap();
+        }
+        try {
+            return MAPPER.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, List<Map<String, Object>>>>() { });
+        } catch (IOException e) {
+            System.out.println("Could not read previous results from " + fileName + ", crawling everything: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    // Listing items are still plain field maps at this point, so they are checked by their key field
+    public boolean isKnown(Map<String, String> item) {
+        String key = item.get(keyField);
+        return key != null && knownKeys.contains(key);
+    }
+
+    // True when a page has books and all of them were seen before, meaning older pages hold nothing new
+    public boolean allKnown(List<Map<String, String>> pageItems) {
+        if (pageItems.isEmpty()) {
+            return false;
+        }
+        for (Map<String, String> item : pageItems) {
+            if (!isKnown(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Add the previous run's books after this run's books, skipping books that were crawled again.
+    // crawled are all the listings this run found on the source, also those merged into other listings.
+    // Each book keeps its level, so once bucketed they still come after the new books of the same level.
+    public void appendPreviousBooks(List<Book> crawled, List<Book> books) {
+        Set<String> crawledKeys = new HashSet<>();
+        for (Book book : crawled) {
+            crawledKeys.add(key(book));
+        }
+
+        for (Book book : previousBooks) {
+            if (!crawledKeys.contains(key(book))) {
+                books.add(book);
+            }
+        }
+    }
+
+    private String key(Book book) {
+        return keyField.equals("title") ? book.title() : book.bookUrl();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+// Keeps every scraper dataset in memory as ready-to-send bytes, plus a gzipped copy and an ETag.
+// Files the scrapers publish into the data directory take precedence over the copies bundled on the classpath,
+// and are picked up again whenever their modification time changes. Each reload swaps the whole dataset in one
+// step, so requests see either the old or the new version, never a mix.
+@Component
+public class DatasetStore {
+
+    // Dataset name -> file written by the matching scraper
+    private static final Map<String, String> DATASET_FILES = new LinkedHashMap<>();
+    static {
+        DATASET_FILES.put("books", "books_by_jlpt.json");
+        DATASET_FILES.put("ani-books", "Ani_Online_Books.json");
+        DATASET_FILES.put("ehonnavi-books", "N5Books.json");
+    }
+
+    private final Path dataDirectory;
+    private final Map<String, Dataset> datasets = new ConcurrentHashMap<>();
+    private final Map<String, String> loadErrors = new ConcurrentHashMap<>();
+
+    // One loaded version of a dataset
+    public record Dataset(byte[] bytes, byte[] gzipped, String etag, long modifiedMillis) {
+    }
+
+    public DatasetStore(@Value("${shiru.data.dir:.}") String dataDirectory) {
+        this.dataDirectory = Paths.get(dataDirectory);
+        reloadChanged();
+    }
+
+    // Current version of a dataset, or null if it couldn't be loaded
+    public Dataset get(String name) {
+        return datasets.get(name);
+    }
+
+    // Why a dataset is missing, for the error response
+    public String loadError(String name) {
+        return loadErrors.getOrDefault(name, "Unknown dataset " + name);
+    }
+
+    // Poll the data directory and reload any dataset whose file changed since it was last loaded.
+    // Also called by CrawlRefresher right after a crawl, hence synchronized
+    @Scheduled(fixedDelayString = "${shiru.data.reload-interval-ms:5000}")
+    public synchronized void reloadChanged() {
+        for (Map.Entry<String, String> entry : DATASET_FILES.entrySet()) {
+            String name = entry.getKey();
+            Path file = dataDirectory.resolve(entry.getValue());
+            Dataset current = datasets.get(name);
+
+            try {
+                if (Files.isRegularFile(file)) {
+                    long modified = Files.getLastModifiedTime(file).toMillis();
+                    if (current == null || current.modifiedMillis() != modified) {
+                        publish(name, Files.readAllBytes(file), modified);
+                        System.out.println("Loaded dataset " + name + " from " + file);
+                    }
+                } else if (current == null) {
+                    // Fall back to the copy bundled with the app, read as a stream so it also works inside a jar
+                    ClassPathResource resource = new ClassPathResource(entry.getValue());
+                    try (InputStream in = resource.getInputStream()) {
+                        publish(name, in.readAllBytes(), 0);
+                    }
+                }
+            } catch (IOException e) {
+                // Only report the first failure, the poll keeps retrying quietly
+                if (loadErrors.put(name, "Error reading the JSON file: " + e.getMessage()) == null) {
+                    System.out.println("Dataset " + name + " could not be loaded: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Replace a dataset with new content
+    public void publish(String name, byte[] bytes, long modifiedMillis) throws IOException {
+        datasets.put(name, new Dataset(bytes, gzip(bytes), etag(bytes), modifiedMillis));
+        loadErrors.remove(name);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    // Weak ETag since the same content is served both plain and gzipped
+    private static String etag(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return "W/\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example;
+
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.brotli.BrotliInterceptor;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Shared HTTP layer used by every scraper to download HTML.
+// One OkHttp client means keep-alive connections (and their TLS sessions) are reused across all pages,
+// HTTP/2 is negotiated where the server supports it, and gzip/brotli bodies are decoded transparently.
+// Every request first waits for its host's turn in the PolitenessScheduler, and 429/503 answers are retried
+// once the host's Retry-After has passed.
+//
+// Settings can be overridden with system properties, e.g. -Dshiru.http.maxIdleConnections=32
+public class HtmlFetcher {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36";
+
+    private static final HtmlFetcher SHARED = new HtmlFetcher(
+            Long.getLong("shiru.http.connectTimeoutSeconds", 15),
+            Long.getLong("shiru.http.readTimeoutSeconds", 30),
+            Integer.getInteger("shiru.http.maxIdleConnections", 16),
+            Long.getLong("shiru.http.keepAliveMinutes", 5));
+
+    // Retries of a request answered with 429 or 503, and the pause used when the answer has no Retry-After
+    private static final int MAX_RETRIES = Integer.getInteger("shiru.http.maxRetries", 3);
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 5000;
+
+    // Listing and detail items are read with StreamingExtractor, -Dshiru.extract.mode=dom parses whole documents instead
+    private static final boolean DOM_EXTRACTION = "dom".equals(System.getProperty("shiru.extract.mode"));
+
+    private final OkHttpClient client;
+    private final PolitenessScheduler politeness = new PolitenessScheduler(this::robotsTxt);
+
+    public HtmlFetcher(long connectTimeoutSeconds, long readTimeoutSeconds, int maxIdleConnections, long keepAliveMinutes) {
+        // Record or replay responses when -Dshiru.replay.mode is set
+        this(connectTimeoutSeconds, readTimeoutSeconds, maxIdleConnections, keepAliveMinutes, Replay::install);
+    }
+
+    // Fetcher whose requests are all answered by the given replay server, whatever -Dshiru.replay.mode says
+    static HtmlFetcher replaying(ReplayServer replayServer) {
+        return new HtmlFetcher(15, 30, 16, 5, builder -> Replay.replayFrom(builder, replayServer));
+    }
+
+    private HtmlFetcher(long connectTimeoutSeconds, long readTimeoutSeconds, int maxIdleConnections, long keepAliveMinutes,
+                        Consumer<OkHttpClient.Builder> replay) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        replay.accept(builder);
+        this.client = builder
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMinutes, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)) // HTTP/2 is picked via ALPN when available
+                .addInterceptor(BrotliInterceptor.INSTANCE) // Advertises br + gzip and decodes either
+                .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .followRedirects(true)
+                .build();
+    }
+
+    public static HtmlFetcher shared() {
+        return SHARED;
+    }
+
+    public PolitenessScheduler politeness() {
+        return politeness;
+    }
+
+    // Items pulled out of a downloaded page along with the validators the server sent for it
+    public record FetchedItems(List<Map<String, String>> items, String etag, String lastModified) {
+    }
+
+    // Conditional GET that runs extractItem over every element matching itemQuery while the body streams in,
+    // without building the page's document. Reading stops after maxItems items, the rest of the body is never downloaded.
+    // Returns null when the server answers 304 Not Modified.
+    public FetchedItems getItemsIfModified(String url, String etag, String lastModified, String itemQuery,
+                                           Function<Element, Map<String, String>> extractItem, int maxItems) throws IOException {
+        try (Response response = execute(url, etag, lastModified)) {
+            if (response.code() == 304) {
+                return null;
+            }
+
+            String host = response.request().url().host();
+            String baseUri = response.request().url().toString();
+            ResponseBody body = response.body();
+            CountingInputStream in = new CountingInputStream(body.byteStream());
+            long parseStartNanos = System.nanoTime();
+
+            List<Map<String, String>> items;
+            if (DOM_EXTRACTION) {
+                items = StreamingExtractor.extract(Jsoup.parse(in, charsetName(body), baseUri), itemQuery, extractItem, maxItems);
+            } else {
+                BufferedInputStream buffered = new BufferedInputStream(in);
+                MediaType contentType = body.contentType();
+                Charset charset = StreamingExtractor.detectCharset(buffered, contentType != null ? contentType.charset() : null);
+                items = StreamingExtractor.extract(new InputStreamReader(buffered, charset), baseUri, itemQuery, extractItem, maxItems);
+            }
+
+            CrawlMetrics.parseTime(host).record(System.nanoTime() - parseStartNanos, TimeUnit.NANOSECONDS);
+            CrawlMetrics.fetchBytes(host).record(in.count);
+            return new FetchedItems(items, response.header("ETag"), response.header("Last-Modified"));
+        }
+    }
+
+    // A downloaded file such as a cover image, contentType is null when the server didn't send one
+    public record Download(byte[] body, String contentType) {
+    }
+
+    // Download a URL as raw bytes, reading at most maxBytes of it
+    public Download download(String url, int maxBytes) throws IOException {
+        try (Response response = execute(url, null, null)) {
+            ResponseBody body = response.body();
+            long length = body.contentLength();
+            if (length > maxBytes) {
+                throw new IOException("Response too large (" + length + " bytes) from " + url);
+            }
+
+            byte[] bytes = body.byteStream().readNBytes(maxBytes + 1);
+            if (bytes.length > maxBytes) {
+                throw new IOException("Response larger than " + maxBytes + " bytes from " + url);
+            }
+            CrawlMetrics.fetchBytes(response.request().url().host()).record(bytes.length);
+            MediaType contentType = body.contentType();
+            return new Download(bytes, contentType != null ? contentType.type() + "/" + contentType.subtype() : null);
+        }
+    }
+
+    // Send a GET with the validators once the host's politeness limit allows it, records the time to headers and
+    // turns error statuses into HttpStatusException. The caller closes the response
+    private Response execute(String url, String etag, String lastModified) throws IOException {
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .header("User-Agent", USER_AGENT);
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+
+        Request built = request.build();
+        String host = built.url().host();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                politeness.acquire(host);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to fetch " + url);
+            }
+
+            long startNanos = System.nanoTime();
+            Response response = client.newCall(built).execute();
+            CrawlMetrics.fetchLatency(host, response.code()).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+            if (response.code() == 304 || response.isSuccessful()) {
+                return response;
+            }
+            response.close();
+
+            // The server asked to slow down, hold back the whole host and try again after the pause
+            if ((response.code() == 429 || response.code() == 503) && attempt < MAX_RETRIES) {
+                long pauseMillis = retryAfterMillis(response.header("Retry-After"));
+                System.out.println(host + " answered " + response.code() + ", pausing it for " + pauseMillis + " ms");
+                politeness.pause(host, pauseMillis);
+                CrawlMetrics.fetchRetries(host, response.code()).increment();
+                continue;
+            }
+            throw new HttpStatusException("HTTP error fetching URL", response.code(), url);
+        }
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    private static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return DEFAULT_RETRY_AFTER_MILLIS;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException invalid) {
+                return DEFAULT_RETRY_AFTER_MILLIS;
+            }
+        }
+    }
+
+    // robots.txt of a host for the PolitenessScheduler, fetched directly so it doesn't wait on the host's own limit.
+    // Null when the host has none or it can't be fetched
+    private String robotsTxt(String host) {
+        Request request = new Request.Builder()
+                .url("https://" + host + "/robots.txt")
+                .header("User-Agent", USER_AGENT)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.isSuccessful() ? response.body().string() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Builder for other clients (e.g. OpenAI) so they share this fetcher's connection pool and dispatcher threads
+    public OkHttpClient.Builder newClientBuilder() {
+        return client.newBuilder();
+    }
+
+    // Counts the body bytes as Jsoup reads them, the body is parsed while it streams in so this is also the download size.
+    // When extraction stops early it's only the part that was read
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    // Use the charset from the Content-Type header, or let Jsoup detect it from the document when missing
+    private static String charsetName(ResponseBody body) {
+        MediaType contentType = body.contentType();
+        Charset charset = contentType != null ? contentType.charset() : null;
+        return charset != null ? charset.name() : null;
+    }
+}
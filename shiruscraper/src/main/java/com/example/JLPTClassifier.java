@@ -0,0 +1,78 @@
+package com.example;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Asks OpenAI for the JLPT level of a batch of titles using JSON in both directions.
+// Every title is sent with a numeric id and the model answers with ids, so each level maps straight back to
+// the book it belongs to instead of having to fuzzy match reformatted titles.
+public class JLPTClassifier {
+
+    private static final Set<String> LEVELS = Set.of("N5", "N4", "N3", "N2", "N1");
+
+    private static final String RESPONSE_FORMAT = "The titles are given as a JSON array of objects with an \"id\" and a \"title\". "
+            + "Respond only with a JSON object of the form {\"results\": [{\"id\": 1, \"level\": \"N3\"}]} "
+            + "containing every id exactly once, where level is one of 'N5', 'N4', 'N3', 'N2', 'N1'.";
+
+    private final String instructions;
+
+    public JLPTClassifier(String instructions) {
+        this.instructions = instructions;
+    }
+
+    // Classify a batch of titles keyed by id, returns the level for every id the model answered.
+    // Ids the model skipped are sent once more on their own before giving up on them.
+    public Map<Integer, String> classifyBatch(Map<Integer, String> titlesById) {
+        Map<Integer, String> levels = requestLevels(titlesById);
+
+        if (!levels.isEmpty() && levels.size() < titlesById.size()) {
+            Map<Integer, String> missing = new LinkedHashMap<>(titlesById);
+            missing.keySet().removeAll(levels.keySet());
+            System.out.println("Retrying " + missing.size() + " titles missing from the OpenAI response");
+            levels.putAll(requestLevels(missing));
+        }
+
+        return levels;
+    }
+
+    private Map<Integer, String> requestLevels(Map<Integer, String> titlesById) {
+        Map<Integer, String> levels = new HashMap<>();
+
+        JSONArray items = new JSONArray();
+        for (Map.Entry<Integer, String> entry : titlesById.entrySet()) {
+            items.put(new JSONObject().put("id", entry.getKey()).put("title", entry.getValue()));
+        }
+        String prompt = instructions + "\n\n" + RESPONSE_FORMAT + "\n\n" + items;
+
+        try {
+            String response = OpenAIClient.shared().complete(prompt, true);
+            if (response == null) {
+                return levels;
+            }
+
+            JSONArray results = new JSONObject(response).getJSONArray("results");
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.getJSONObject(i);
+                int id = result.optInt("id", -1);
+                String level = result.optString("level").trim().toUpperCase();
+
+                if (!titlesById.containsKey(id) || !LEVELS.contains(level)) {
+                    System.out.println("Ignoring unexpected classification result: " + result);
+                    continue;
+                }
+                levels.put(id, level);
+            }
+        } catch (IOException | JSONException e) {
+            System.out.println("Error calling OpenAI API: " + e.getMessage());
+        }
+
+        return levels;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+// JLPT levels a book can be filed under, in the order they are exported.
+// NA holds books that haven't been (or couldn't be) classified.
+public enum JlptLevel {
+    N5("N5"),
+    N4("N4"),
+    N3("N3"),
+    N2("N2"),
+    N1("N1"),
+    NA("N/A");
+
+    private final String label;
+
+    JlptLevel(String label) {
+        this.label = label;
+    }
+
+    // Name used in the JSON files and the API
+    public String label() {
+        return label;
+    }
+
+    // Level for a label such as "N3", or null if the label isn't a level
+    public static JlptLevel fromLabel(String label) {
+        for (JlptLevel level : values()) {
+            if (level.label.equals(label)) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    // Group books by their current level in one pass, every level is present even when it has no books
+    public static EnumMap<JlptLevel, List<Book>> bucket(Iterable<Book> books) {
+        EnumMap<JlptLevel, List<Book>> buckets = new EnumMap<>(JlptLevel.class);
+        for (JlptLevel level : values()) {
+            buckets.put(level, new ArrayList<>());
+        }
+        for (Book book : books) {
+            buckets.get(book.level()).add(book);
+        }
+        return buckets;
+    }
+}
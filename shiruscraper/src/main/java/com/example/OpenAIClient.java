@@ -0,0 +1,211 @@
+package com.example;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Shared client for the OpenAI chat completions API.
+// Requests are paced by a request and token budget, the x-ratelimit-* headers from each response pause
+// every caller before the server-side limit is hit, and 429/5xx answers are retried with jittered backoff.
+//
+// Budgets can be overridden with system properties, e.g. -Dshiru.openai.tokensPerMinute=200000
+public class OpenAIClient {
+
+    public static final String MODEL = "gpt-4o-mini";
+
+    private static final String URL = "https://api.openai.com/v1/chat/completions";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    // Matches the parts of reset durations such as "1s", "6m0s" or "250ms"
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private static OpenAIClient shared;
+
+    private final OkHttpClient client;
+    private final String apiKey;
+    private final int maxRetries;
+    private final TokenBucket requestBudget;
+    private final TokenBucket tokenBudget;
+
+    // Set from rate limit headers or a 429, every caller waits until this time before sending
+    private volatile long pausedUntilMillis;
+
+    public OpenAIClient(String apiKey, int requestsPerMinute, int tokensPerMinute, int maxRetries) {
+        // Increase OkHttp timeouts to avoid timeout issues with long API responses
+        this.client = HtmlFetcher.shared().newClientBuilder()
+                .connectTimeout(60, TimeUnit.SECONDS)  // 60 seconds to establish a connection
+                .readTimeout(60, TimeUnit.SECONDS)     // 60 seconds to wait for the response
+                .writeTimeout(60, TimeUnit.SECONDS)    // 60 seconds to send data to the server
+                .build();
+        this.apiKey = apiKey;
+        this.maxRetries = maxRetries;
+        this.requestBudget = new TokenBucket(requestsPerMinute, requestsPerMinute / 60.0);
+        this.tokenBudget = new TokenBucket(tokensPerMinute, tokensPerMinute / 60.0);
+    }
+
+    public static synchronized OpenAIClient shared() {
+        if (shared == null) {
+            Dotenv dotenv = Dotenv.configure().directory("../").ignoreIfMissing().load(); // Falls back to the environment, e.g. when deployed
+            shared = new OpenAIClient(
+                    dotenv.get("OPENAI_API_KEY"),
+                    Integer.getInteger("shiru.openai.requestsPerMinute", 60),
+                    Integer.getInteger("shiru.openai.tokensPerMinute", 100000),
+                    Integer.getInteger("shiru.openai.maxRetries", 5));
+        }
+        return shared;
+    }
+
+    // Send a single user prompt and return the content of the first choice, or null if the API refused it
+    public String complete(String prompt) throws IOException {
+        return complete(prompt, false);
+    }
+
+    // Same as complete(prompt), with jsonOutput the model is constrained to answer with a JSON object
+    public String complete(String prompt, boolean jsonOutput) throws IOException {
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("model", MODEL);
+        requestBody.put("messages", Collections.singletonList(new JSONObject().put("role", "user").put("content", prompt)));
+        if (jsonOutput) {
+            requestBody.put("response_format", new JSONObject().put("type", "json_object"));
+        }
+
+        Request request = new Request.Builder()
+                .url(URL)
+                .post(RequestBody.create(requestBody.toString(), JSON))
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .addHeader("Content-Type", "application/json")
+                .build();
+
+        int estimatedTokens = estimateTokens(prompt);
+
+        try {
+            for (int attempt = 0; ; attempt++) {
+                waitForBudget(estimatedTokens);
+
+                long startNanos = System.nanoTime();
+                try (Response response = client.newCall(request).execute()) {
+                    if (response.isSuccessful()) {
+                        applyRateLimitHeaders(response, estimatedTokens);
+                        JSONObject jsonResponse = new JSONObject(response.body().string());
+                        CrawlMetrics.openAILatency(response.code()).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                        recordUsage(jsonResponse);
+                        return jsonResponse.getJSONArray("choices").getJSONObject(0).getJSONObject("message").getString("content");
+                    }
+
+                    CrawlMetrics.openAILatency(response.code()).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    boolean retryable = response.code() == 429 || response.code() >= 500;
+                    if (!retryable || attempt >= maxRetries) {
+                        System.out.println("OpenAI API Error: " + response.code() + " - " + response.message());
+                        System.out.println("Response body: " + response.body().string());
+                        return null;
+                    }
+
+                    CrawlMetrics.openAIRetries(response.code()).increment();
+                    long delay = backoffMillis(response, attempt);
+                    System.out.println("OpenAI API returned " + response.code() + ", retrying in " + delay + " ms");
+                    pauseFor(delay);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the OpenAI rate limit");
+        }
+    }
+
+    // Count the tokens the API actually billed for the request
+    private static void recordUsage(JSONObject jsonResponse) {
+        JSONObject usage = jsonResponse.optJSONObject("usage");
+        if (usage != null) {
+            CrawlMetrics.openAITokens("prompt").increment(usage.optLong("prompt_tokens"));
+            CrawlMetrics.openAITokens("completion").increment(usage.optLong("completion_tokens"));
+        }
+    }
+
+    private void waitForBudget(int estimatedTokens) throws InterruptedException {
+        long pause;
+        while ((pause = pausedUntilMillis - System.currentTimeMillis()) > 0) {
+            Thread.sleep(pause);
+        }
+        requestBudget.acquire(1);
+        tokenBudget.acquire(estimatedTokens);
+    }
+
+    // Stop sending before the server starts rejecting requests
+    private void applyRateLimitHeaders(Response response, int estimatedTokens) {
+        String remainingRequests = response.header("x-ratelimit-remaining-requests");
+        String remainingTokens = response.header("x-ratelimit-remaining-tokens");
+
+        if (remainingRequests != null && parseLong(remainingRequests) <= 0) {
+            pauseFor(parseDurationMillis(response.header("x-ratelimit-reset-requests")));
+        }
+        if (remainingTokens != null && parseLong(remainingTokens) < estimatedTokens) {
+            pauseFor(parseDurationMillis(response.header("x-ratelimit-reset-tokens")));
+        }
+    }
+
+    // Exponential backoff with jitter, never shorter than what the server asked for
+    static long backoffMillis(Response response, int attempt) {
+        long exponential = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        long requested = 0;
+
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            requested = parseLong(retryAfter) * 1000;
+        }
+        requested = Math.max(requested, parseDurationMillis(response.header("x-ratelimit-reset-requests")));
+        requested = Math.max(requested, parseDurationMillis(response.header("x-ratelimit-reset-tokens")));
+
+        long delay = Math.max(exponential, Math.min(requested, MAX_BACKOFF_MILLIS));
+        return delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private synchronized void pauseFor(long millis) {
+        pausedUntilMillis = Math.max(pausedUntilMillis, System.currentTimeMillis() + millis);
+    }
+
+    // Japanese text is roughly one token per character, plus room for the reply
+    private static int estimateTokens(String prompt) {
+        return prompt.length() + 500;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static long parseDurationMillis(String value) {
+        if (value == null) {
+            return 0;
+        }
+        double millis = 0;
+        Matcher matcher = DURATION_PART.matcher(value);
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "h" -> millis += amount * 3600000;
+                case "m" -> millis += amount * 60000;
+                case "s" -> millis += amount * 1000;
+                default -> millis += amount;
+            }
+        }
+        return (long) Math.ceil(millis);
+    }
+}
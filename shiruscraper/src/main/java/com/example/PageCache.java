@@ -0,0 +1,153 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// On-disk cache of pages keyed by URL.
+// Each entry keeps the ETag/Last-Modified validators and the items that were extracted from the page,
+// so a 304 Not Modified answer can be served straight from the cache without downloading or parsing HTML.
+// Entries also record the version of the extractor that produced the items (see SourceScraper.extractorVersion)
+// and of the entry format. An entry of another version is treated as missing, so changed extraction code never
+// gets served items it would no longer produce.
+//
+// The cache directory can be changed with -Dshiru.cache.dir=<path>
+public class PageCache {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Bump when the layout of the stored entries changes
+    private static final String FORMAT_VERSION = "2";
+
+    private static final PageCache SHARED = new PageCache(Paths.get(System.getProperty("shiru.cache.dir", "page-cache")));
+
+    private final Path directory;
+    private final Map<String, Optional<CachedPage>> entries = new ConcurrentHashMap<>();
+
+    // What gets stored for each URL, version is FORMAT_VERSION followed by the extractor version
+    public record CachedPage(String url, String version, String etag, String lastModified, List<Map<String, String>> items) {
+    }
+
+    public PageCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static PageCache shared() {
+        return SHARED;
+    }
+
+    // Look up a URL, returns null if it has never been cached or was cached by another extractor version
+    public CachedPage get(String url, String extractorVersion) {
+        Optional<CachedPage> entry = entries.get(url);
+        if (entry == null) {
+            // The file is read outside the map so other URLs aren't blocked on the disk, an entry stored meanwhile wins
+            Optional<CachedPage> loaded = load(url);
+            entry = entries.putIfAbsent(url, loaded);
+            if (entry == null) {
+                entry = loaded;
+            }
+        }
+        String version = version(extractorVersion);
+        return entry.filter(page -> version.equals(page.version())).orElse(null);
+    }
+
+    // Store the validators and extracted items for a URL
+    public void put(String url, String extractorVersion, String etag, String lastModified, List<Map<String, String>> items) {
+        CachedPage page = new CachedPage(url, version(extractorVersion), etag, lastModified, items);
+        entries.put(url, Optional.of(page));
+
+        try {
+            Files.createDirectories(directory);
+            Path target = fileFor(url);
+            // A temp file of its own per write, several fetcher lanes may store the same URL at once
+            Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+            try {
+                MAPPER.writeValue(temp.toFile(), page);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing page cache entry for " + url + ": " + e.getMessage());
+        }
+    }
+
+    // Forget a URL, in memory and on disk
+    public void remove(String url) {
+        entries.put(url, Optional.empty());
+        try {
+            Files.deleteIfExists(fileFor(url));
+        } catch (IOException e) {
+            System.out.println("Error removing page cache entry for " + url + ": " + e.getMessage());
+        }
+    }
+
+    // Fetch a page with a conditional GET and return its items.
+    // When the server reports the page unchanged the cached items are returned and no HTML is parsed,
+    // otherwise the fresh page is streamed through the item extractor and the result is cached.
+    // A fresh page without validators can't be revalidated later, so any older entry for it is dropped instead
+    public List<Map<String, String>> fetchItems(HtmlFetcher fetcher, String url, String extractorVersion, String itemQuery,
+                                                Function<Element, Map<String, String>> extractItem) throws IOException {
+        CachedPage cached = get(url, extractorVersion);
+
+        // Only send validators when there are stored items to fall back on
+        HtmlFetcher.FetchedItems page = cached != null
+                ? fetcher.getItemsIfModified(url, cached.etag(), cached.lastModified(), itemQuery, extractItem, Integer.MAX_VALUE)
+                : fetcher.getItemsIfModified(url, null, null, itemQuery, extractItem, Integer.MAX_VALUE);
+
+        if (page == null) {
+            System.out.println("Not modified, using cached items for: " + url);
+            return cached.items();
+        }
+
+        if (page.etag() != null || page.lastModified() != null) {
+            put(url, extractorVersion, page.etag(), page.lastModified(), page.items());
+        } else if (cached != null) {
+            remove(url);
+        }
+        return page.items();
+    }
+
+    private Optional<CachedPage> load(String url) {
+        Path file = fileFor(url);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            CachedPage page = MAPPER.readValue(file.toFile(), CachedPage.class);
+            // Guard against a hash collision returning another URL's entry
+            return url.equals(page.url()) ? Optional.of(page) : Optional.empty();
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable page cache entry for " + url + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static String version(String extractorVersion) {
+        return FORMAT_VERSION + "/" + extractorVersion;
+    }
+
+    // Cache files are named after the SHA-1 of the URL
+    private Path fileFor(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
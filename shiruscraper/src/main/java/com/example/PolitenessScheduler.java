@@ -0,0 +1,154 @@
+package com.example;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Paces requests to each scraped site with a token bucket per host, so every host is only held to its own limit
+// and requests to different hosts never wait for each other.
+// A host's rate is the lowest of the default rate, the rate a source asks for (see SourceScraper.maxRequestsPerSecond)
+// and the Crawl-delay in the host's robots.txt, which is read once before the first request. A Retry-After answer
+// pauses only that host until the time the server asked for.
+//
+// The default rate can be changed with -Dshiru.politeness.requestsPerSecond=<rate>
+public class PolitenessScheduler {
+
+    private static final double DEFAULT_REQUESTS_PER_SECOND = Double.parseDouble(System.getProperty("shiru.politeness.requestsPerSecond", "4"));
+
+    // Longest pause a Retry-After header can impose, a misconfigured server shouldn't stall a crawl for hours
+    private static final long MAX_PAUSE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Function<String, String> robotsTxt;
+    private final Map<String, Double> requestedRates = new ConcurrentHashMap<>();
+    // Completed once the host's robots.txt has been read, see host()
+    private final Map<String, CompletableFuture<Host>> hosts = new ConcurrentHashMap<>();
+
+    // Limits and pause for one host
+    private static final class Host {
+        private final TokenBucket bucket;
+        private final double requestsPerSecond;
+        private volatile long pausedUntilMillis;
+
+        Host(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            // Slow hosts get strictly spaced requests, faster ones may use up to a second's worth at once
+            this.bucket = new TokenBucket(Math.max(1, requestsPerSecond), requestsPerSecond);
+        }
+    }
+
+    // robotsTxt returns the robots.txt of a host, or null when there is none or it can't be fetched
+    public PolitenessScheduler(Function<String, String> robotsTxt) {
+        this.robotsTxt = robotsTxt;
+    }
+
+    // Ask for a lower rate for a host, only applies if called before the first request to it
+    public void limit(String host, double requestsPerSecond) {
+        if (requestsPerSecond > 0) {
+            requestedRates.merge(host, requestsPerSecond, Math::min);
+        }
+    }
+
+    // Wait until a request to the host may be sent
+    public void acquire(String host) throws InterruptedException {
+        Host state = host(host);
+        long waitNanos = state.bucket.reserveNanos(1);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        // Another request may have been answered with a 429 or 503 while this one waited, so check until no pause is left
+        long pauseMillis;
+        while ((pauseMillis = state.pausedUntilMillis - System.currentTimeMillis()) > 0) {
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    // Hold back every request to the host for a while, e.g. after a 429 or 503 with Retry-After
+    public void pause(String host, long millis) {
+        Host state = host(host);
+        long until = System.currentTimeMillis() + Math.min(millis, MAX_PAUSE_MILLIS);
+        synchronized (state) {
+            state.pausedUntilMillis = Math.max(state.pausedUntilMillis, until);
+        }
+    }
+
+    // Requests per second a host ended up with, for logging
+    public double rate(String host) {
+        CompletableFuture<Host> state = hosts.get(host);
+        return state != null && state.isDone() ? state.join().requestsPerSecond : DEFAULT_REQUESTS_PER_SECOND;
+    }
+
+    // State of a host, the first caller reads its robots.txt while later callers wait for that.
+    // The fetch happens outside the map, computeIfAbsent would hold a lock other hosts may need during the download
+    private Host host(String host) {
+        CompletableFuture<Host> state = hosts.get(host);
+        if (state == null) {
+            CompletableFuture<Host> created = new CompletableFuture<>();
+            state = hosts.putIfAbsent(host, created);
+            if (state == null) {
+                try {
+                    created.complete(createHost(host));
+                } finally {
+                    // Don't leave other callers waiting forever if reading robots.txt failed unexpectedly
+                    created.complete(new Host(Math.min(DEFAULT_REQUESTS_PER_SECOND, requestedRates.getOrDefault(host, DEFAULT_REQUESTS_PER_SECOND))));
+                }
+                return created.join();
+            }
+        }
+        return state.join();
+    }
+
+    private Host createHost(String host) {
+        double rate = Math.min(DEFAULT_REQUESTS_PER_SECOND, requestedRates.getOrDefault(host, DEFAULT_REQUESTS_PER_SECOND));
+
+        String robots = robotsTxt.apply(host);
+        double crawlDelay = robots != null ? crawlDelaySeconds(robots) : 0;
+        if (crawlDelay > 0) {
+            rate = Math.min(rate, 1 / crawlDelay);
+        }
+
+        System.out.println("Requests to " + host + " limited to " + String.format("%.2f", rate) + " per second"
+                + (crawlDelay > 0 ? " (robots.txt Crawl-delay " + crawlDelay + "s)" : ""));
+        return new Host(rate);
+    }
+
+    // Crawl-delay from the "User-agent: *" group of a robots.txt, in seconds, or 0 when it has none
+    static double crawlDelaySeconds(String robotsTxt) {
+        boolean inWildcardGroup = false;
+        boolean previousWasUserAgent = false;
+        double delay = 0;
+
+        for (String rawLine : robotsTxt.split("\r?\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("user-agent")) {
+                // Consecutive User-agent lines share one group, any other line in between starts a new one
+                if (!previousWasUserAgent) {
+                    inWildcardGroup = false;
+                }
+                inWildcardGroup |= value.equals("*");
+                previousWasUserAgent = true;
+                continue;
+            }
+            previousWasUserAgent = false;
+
+            if (field.equals("crawl-delay") && inWildcardGroup) {
+                try {
+                    delay = Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    System.out.println("Ignoring invalid Crawl-delay " + value);
+                }
+            }
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Record/replay for everything that goes through HtmlFetcher's client, which includes the OpenAI calls.
+//
+//   -Dshiru.replay.mode=record  fetch live and save every response to the archive
+//   -Dshiru.replay.mode=replay  send every request to a local ReplayServer that answers from the archive
+//
+// Other settings: shiru.replay.dir (default "replay-archive"), and for replay shiru.replay.latencyMs,
+// shiru.replay.errorRate and shiru.replay.rateLimitRate (fractions of requests answered with 503 / 429),
+// shiru.replay.seed and shiru.replay.threads.
+// The page and classification caches short-circuit requests, so point shiru.cache.dir and
+// shiru.classificationCache at empty locations when recording or measuring a full crawl.
+public final class Replay {
+
+    // Response headers worth keeping, the rest describe the original transfer and don't apply to a replay
+    private static final List<String> RECORDED_HEADERS = List.of("Content-Type", "ETag", "Last-Modified", "Retry-After",
+            "x-ratelimit-remaining-requests", "x-ratelimit-remaining-tokens", "x-ratelimit-reset-requests", "x-ratelimit-reset-tokens");
+
+    private static ReplayServer server;
+
+    private Replay() {
+    }
+
+    // Add the record or replay interceptor to a client, does nothing unless shiru.replay.mode is set.
+    // Called before any other interceptor so it sees decoded bodies and the requests as the scrapers made them.
+    public static void install(OkHttpClient.Builder builder) {
+        String mode = System.getProperty("shiru.replay.mode", "off");
+        ReplayArchive archive = new ReplayArchive(Paths.get(System.getProperty("shiru.replay.dir", "replay-archive")));
+
+        switch (mode) {
+            case "record" -> {
+                System.out.println("Recording responses to " + System.getProperty("shiru.replay.dir", "replay-archive"));
+                builder.addInterceptor(chain -> record(chain, archive));
+            }
+            case "replay" -> replayFrom(builder, server(archive));
+            case "off" -> {
+            }
+            default -> System.out.println("Unknown shiru.replay.mode " + mode + ", expected record or replay");
+        }
+    }
+
+    // Send every request of a client to the given replay server, e.g. one a test started on its own archive
+    static void replayFrom(OkHttpClient.Builder builder, ReplayServer replayServer) {
+        builder.addInterceptor(chain -> redirect(chain, replayServer));
+    }
+
+    private static synchronized ReplayServer server(ReplayArchive archive) {
+        if (server == null) {
+            long latencyMillis = Long.getLong("shiru.replay.latencyMs", 0);
+            double errorRate = Double.parseDouble(System.getProperty("shiru.replay.errorRate", "0"));
+            double rateLimitRate = Double.parseDouble(System.getProperty("shiru.replay.rateLimitRate", "0"));
+            try {
+                server = new ReplayServer(archive, Integer.getInteger("shiru.replay.threads", 16), latencyMillis, errorRate, rateLimitRate,
+                        Long.getLong("shiru.replay.seed", 1));
+                server.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            System.out.println("Replaying from " + System.getProperty("shiru.replay.dir", "replay-archive") + " via " + server.baseUrl()
+                    + " (latency " + latencyMillis + "ms, error rate " + errorRate + ", 429 rate " + rateLimitRate + ")");
+        }
+        return server;
+    }
+
+    // Fetch live and store the response. Conditional headers are dropped so the archive always holds the full page,
+    // the 304 is worked out here instead so callers see the same answer they would have got
+    private static Response record(Interceptor.Chain chain, ReplayArchive archive) throws IOException {
+        Request request = chain.request();
+        Request unconditional = request.newBuilder()
+                .removeHeader("If-None-Match")
+                .removeHeader("If-Modified-Since")
+                .build();
+
+        Response response = chain.proceed(unconditional);
+        ResponseBody responseBody = response.body();
+        byte[] body = responseBody != null ? responseBody.bytes() : new byte[0];
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : RECORDED_HEADERS) {
+            String value = response.header(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        String key = ReplayArchive.key(request.method(), request.url().toString(), requestBody(request));
+        ReplayArchive.Entry entry = new ReplayArchive.Entry(key, request.method(), request.url().toString(), response.code(), headers, body);
+        archive.put(entry);
+
+        Response.Builder replayed = response.newBuilder()
+                .request(request)
+                .body(ResponseBody.create(body, responseBody != null ? responseBody.contentType() : null));
+        if (entry.notModified(request.header("If-None-Match"), request.header("If-Modified-Since"))) {
+            replayed.code(304).body(ResponseBody.create(new byte[0], null));
+        }
+        return replayed.build();
+    }
+
+    // Send the request to the replay server, then make the response look like it came from the original URL
+    private static Response redirect(Interceptor.Chain chain, ReplayServer replayServer) throws IOException {
+        Request original = chain.request();
+        Request redirected = original.newBuilder()
+                .url(replayServer.baseUrl() + original.url().encodedPath())
+                .header(ReplayServer.ORIGINAL_URL_HEADER, original.url().toString())
+                .build();
+        return chain.proceed(redirected).newBuilder().request(original).build();
+    }
+
+    private static byte[] requestBody(Request request) throws IOException {
+        if (request.body() == null) {
+            return null;
+        }
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readByteArray();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Map;
+
+// Recorded HTTP responses, one JSON file per request.
+// Requests are identified by method, URL and (for POSTs such as OpenAI calls) the request body, so replaying the
+// same crawl asks for exactly the same keys. Only the response headers that matter to the scrapers are kept,
+// request headers such as the OpenAI Authorization header are never written.
+public class ReplayArchive {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path directory;
+
+    // One recorded response, the body is stored already decoded (no gzip/brotli)
+    public record Entry(String key, String method, String url, int status, Map<String, String> headers, byte[] body) {
+
+        // Whether a conditional request with these headers gets a 304 for this response. If-None-Match is compared
+        // with the ETag and wins when both are sent, otherwise If-Modified-Since is compared with Last-Modified
+        public boolean notModified(String ifNoneMatch, String ifModifiedSince) {
+            if (ifNoneMatch != null) {
+                return ifNoneMatch.equals(headers.get("ETag"));
+            }
+            ZonedDateTime modifiedSince = httpDate(ifModifiedSince);
+            ZonedDateTime lastModified = httpDate(headers.get("Last-Modified"));
+            return modifiedSince != null && lastModified != null && !lastModified.isAfter(modifiedSince);
+        }
+
+        private static ZonedDateTime httpDate(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+
+    public ReplayArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    // Key for a request, the body is hashed so large prompts don't end up in the key
+    public static String key(String method, String url, byte[] requestBody) {
+        String key = method + " " + url;
+        return requestBody == null || requestBody.length == 0 ? key : key + " " + sha1(requestBody);
+    }
+
+    // Recorded response for a key, or null if the request was never recorded
+    public Entry get(String key) throws IOException {
+        Path file = fileFor(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Entry entry = MAPPER.readValue(file.toFile(), Entry.class);
+        return key.equals(entry.key()) ? entry : null;
+    }
+
+    public void put(Entry entry) throws IOException {
+        Files.createDirectories(directory);
+        Path target = fileFor(entry.key());
+        // A temp file of its own per write, requests for the same key may be recorded at once
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            MAPPER.writeValue(temp.toFile(), entry);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(sha1(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Local HTTP server that answers requests from a ReplayArchive instead of the real sites and OpenAI.
+// Clients send every request here with the original URL in the X-Replay-Url header (see Replay).
+// Latency, server errors and 429s can be injected to see how a crawl behaves under a slow or flaky upstream,
+// the random choices come from a fixed seed so two runs with the same settings see the same failures.
+// Each roll is derived from the seed, the request and how often that request was seen before, so which requests
+// fail doesn't depend on the order the handler threads happen to run in.
+public class ReplayServer {
+
+    public static final String ORIGINAL_URL_HEADER = "X-Replay-Url";
+
+    private final ReplayArchive archive;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final double rateLimitRate;
+    private final long seed;
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final HttpServer server;
+
+    public ReplayServer(ReplayArchive archive, int threads, long latencyMillis, double errorRate, double rateLimitRate, long seed) throws IOException {
+        this.archive = archive;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.rateLimitRate = rateLimitRate;
+        this.seed = seed;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "replay-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    // Start serving, the server's dispatcher thread inherits daemon status from the thread that starts it,
+    // so it's started from a daemon thread to let scraper runs exit normally when they are done
+    public void start() throws IOException {
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread starter = new Thread(() -> {
+            try {
+                server.start();
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        }, "replay-server-start");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting the replay server", e);
+        }
+        if (failure.get() != null) {
+            throw new IOException("Could not start the replay server", failure.get());
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String url = exchange.getRequestHeaders().getFirst(ORIGINAL_URL_HEADER);
+            byte[] requestBody;
+            try (InputStream in = exchange.getRequestBody()) {
+                requestBody = in.readAllBytes();
+            }
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            // Injected failures come before the lookup so they also hit requests that would succeed
+            String key = ReplayArchive.key(exchange.getRequestMethod(), url, requestBody);
+            double roll = roll(key);
+            if (roll < rateLimitRate) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "Injected rate limit");
+                return;
+            }
+            if (roll < rateLimitRate + errorRate) {
+                send(exchange, 503, "Injected server error");
+                return;
+            }
+
+            ReplayArchive.Entry entry = url != null ? archive.get(key) : null;
+            if (entry == null) {
+                System.out.println("Not in the replay archive: " + exchange.getRequestMethod() + " " + url);
+                send(exchange, 404, "Not in the replay archive: " + url);
+                return;
+            }
+
+            for (Map.Entry<String, String> header : entry.headers().entrySet()) {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+
+            // Conditional requests from the page cache get a 304 when they match the recorded validators
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            if (entry.notModified(ifNoneMatch, ifModifiedSince)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(entry.status(), entry.body().length == 0 ? -1 : entry.body().length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(entry.body());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Same value for the same seed, request and attempt, a retried request rolls again
+    private double roll(String key) {
+        int attempt = attempts.computeIfAbsent(key, unused -> new AtomicInteger()).getAndIncrement();
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L ^ ((long) key.hashCode() << 32 | attempt)).nextDouble();
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -2,10 +2,19 @@ package com.example;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ShiruScraperApplication {
     public static void main(String[] args) {
         SpringApplication.run(ShiruScraperApplication.class, args);
     }
+
+    // The crawls CrawlRefresher runs fill the shared cover cache, the endpoints serve from that same instance
+    @Bean
+    public CoverCache coverCache() {
+        return CoverCache.shared();
+    }
 }
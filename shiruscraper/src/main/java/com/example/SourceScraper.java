@@ -0,0 +1,85 @@
+package com.example;
+
+import org.jsoup.nodes.Element;
+
+import java.util.Map;
+
+// One book source as seen by CrawlOrchestrator.
+// A source only describes where its books are and how to read them, the orchestrator does the fetching, caching,
+// incremental bookkeeping, classification and export the same way for every source.
+//
+// Listing and detail items are plain field maps ("title", "imageUrl", "bookUrl") because that's what the page
+// cache stores, they become Books once an item is complete.
+// Sources describe their items as a CSS query plus a function over one matched element, so pages can be read with
+// StreamingExtractor without building the whole document.
+public interface SourceScraper {
+
+    // Source name used for Books and the search API, e.g. "honto"
+    String source();
+
+    // File the source's books are published to
+    String outputFile();
+
+    // Item field that identifies a book between runs, "bookUrl" or "title"
+    String knownKeyField();
+
+    // URL of a listing page, pages are numbered from 1 and newer books come first
+    String listingUrl(int page);
+
+    // Query parameter holding the page number in listing URLs. The orchestrator reads the pager links that carry it
+    // to find out how many listing pages there are
+    String pageParameter();
+
+    // Listing pages crawled at most, the page count normally comes from the listing's own pager.
+    // -Dshiru.crawl.maxPages=<n> overrides it for every source
+    default int maxListingPages() {
+        return 100;
+    }
+
+    // CSS query matching one book on a listing page
+    String itemSelector();
+
+    // Pull one book's fields out of an element matching itemSelector, or null to skip it
+    Map<String, String> extractItem(Element element);
+
+    // Key for the items the page cache keeps, bump it when itemSelector, extractItem or the detail extraction change
+    default String extractorVersion() {
+        return "1";
+    }
+
+    // Detail page to fetch for an item, or null when the listing already has everything
+    default String detailUrl(Map<String, String> item) {
+        return null;
+    }
+
+    // CSS query for the element on a detail page that holds the missing fields, reading stops once it's found
+    default String detailSelector() {
+        return null;
+    }
+
+    // Fields read from the detailSelector element, they are added to the listing item. Empty when nothing was found
+    default Map<String, String> extractDetail(Element element) {
+        return Map.of();
+    }
+
+    // Level every new book starts with, sources without a classifier keep it
+    default JlptLevel defaultLevel() {
+        return JlptLevel.NA;
+    }
+
+    // Classifier for the source's titles, or null if the source isn't classified
+    default JLPTClassifier classifier() {
+        return null;
+    }
+
+    // Key for cached classifications, bump it when the classifier's prompt changes
+    default String classificationVersion() {
+        return null;
+    }
+
+    // Requests per second the source's site should see at most, 0 to use the PolitenessScheduler's default.
+    // A lower robots.txt Crawl-delay still wins
+    default double maxRequestsPerSecond() {
+        return 0;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Pulls items out of HTML while it is still being parsed, using Jsoup's StreamParser.
+// Each element matching the item query is handed to the extractor as soon as its end tag is read, then its children
+// are dropped, and so are the children of every other finished element outside an item, so the full document tree is
+// never built. Only the open elements and empty shells of finished ones are kept.
+// Once maxItems items are found the rest of the input isn't read at all, e.g. a detail page stops at its title.
+// A match inside another match is part of the outer item and not an item of its own, e.g. a link with a page
+// parameter inside a book entry isn't read as a pager link. The query is checked on elements that are still open, so
+// it has to be decidable from an element's start tag and what came before it, as tag, class and attribute queries are.
+// extract(Document, ...) gives the same items for a document that was parsed in full.
+public final class StreamingExtractor {
+
+    // How far into the body to look for a <meta charset>, same window browsers use
+    private static final int CHARSET_SNIFF_BYTES = 1024 * 5;
+    private static final Pattern META_CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([A-Za-z0-9_\\-:.]+)", Pattern.CASE_INSENSITIVE);
+
+    private StreamingExtractor() {
+    }
+
+    // Run extractItem over every element matching itemQuery, skipping null results, until maxItems items are found
+    public static List<Map<String, String>> extract(Reader reader, String baseUri, String itemQuery,
+                                                    Function<Element, Map<String, String>> extractItem, int maxItems) throws IOException {
+        Evaluator itemEvaluator = QueryParser.parse(itemQuery);
+        List<Map<String, String>> items = new ArrayList<>();
+
+        // StreamParser needs a reader that supports mark()
+        Reader markable = reader.markSupported() ? reader : new BufferedReader(reader);
+
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(markable, baseUri)) {
+            // Matching against the document directly, Element.is() would look the root up again for every check
+            Document root = parser.document();
+            Map<Element, Boolean> openMatches = new IdentityHashMap<>();
+            Iterator<Element> elements = parser.iterator();
+            while (elements.hasNext()) {
+                Element element = elements.next();
+                openMatches.remove(element); // Finished, nothing below it asks any more
+
+                Element parent = element.parent();
+                if (parent != null && inMatch(root, parent, itemEvaluator, openMatches)) {
+                    continue; // Part of an item that isn't finished yet, its extractor still needs it
+                }
+                if (itemEvaluator.matches(root, element)) {
+                    Map<String, String> item = extractItem.apply(element);
+                    element.empty();
+                    if (item != null) {
+                        items.add(item);
+                        if (items.size() >= maxItems) {
+                            parser.stop(); // Everything needed has been read
+                            break;
+                        }
+                    }
+                } else {
+                    // Finished and not part of an item, nothing will look at its content again.
+                    // Emptied rather than removed, removing children one at a time reindexes their siblings each time
+                    element.empty();
+                }
+            }
+        }
+        return items;
+    }
+
+    // Run extractItem over the elements of a parsed document that match itemQuery outside another match, skipping null
+    // results, until maxItems items are found. Gives the same items as streaming the document's HTML
+    public static List<Map<String, String>> extract(Document document, String itemQuery,
+                                                    Function<Element, Map<String, String>> extractItem, int maxItems) {
+        List<Map<String, String>> items = new ArrayList<>();
+        Set<Element> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Element element : document.select(itemQuery)) {
+            matches.add(element);
+            if (hasAncestorIn(element, matches)) {
+                continue;
+            }
+            Map<String, String> item = extractItem.apply(element);
+            if (item != null) {
+                items.add(item);
+                if (items.size() >= maxItems) {
+                    break;
+                }
+            }
+        }
+        return items;
+    }
+
+    // Charset from the Content-Type header, else from a <meta> tag near the top of the page, else UTF-8.
+    // The stream is left where it was, it has to support mark/reset
+    public static Charset detectCharset(BufferedInputStream in, Charset declared) throws IOException {
+        if (declared != null) {
+            return declared;
+        }
+
+        in.mark(CHARSET_SNIFF_BYTES);
+        byte[] head = in.readNBytes(CHARSET_SNIFF_BYTES);
+        in.reset();
+
+        Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown charset " + matcher.group(1) + ", reading as UTF-8");
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    // Whether an open element matches the item query or is inside one that does. Elements inside an item finish before
+    // the item does and are still needed by its extractor. Each open element is checked once and remembered until it
+    // finishes, so a finished element only looks at its parent instead of matching every ancestor again
+    private static boolean inMatch(Document root, Element open, Evaluator itemEvaluator, Map<Element, Boolean> openMatches) {
+        Boolean known = openMatches.get(open);
+        if (known == null) {
+            Element parent = open.parent();
+            known = parent != null && inMatch(root, parent, itemEvaluator, openMatches) || itemEvaluator.matches(root, open);
+            openMatches.put(open, known);
+        }
+        return known;
+    }
+
+    // Selected elements come in document order, so an enclosing match is always already in matches
+    private static boolean hasAncestorIn(Element element, Set<Element> matches) {
+        for (Element parent = element.parent(); parent != null; parent = parent.parent()) {
+            if (matches.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Finds listings of the same book among titles that were written a little differently, e.g.
+// "囀る鳥は羽ばたかない 9" on one site and "【コミック】囀る鳥は羽ばたかない（9）" on another.
+// Every title is normalized (see Titles.normalizeTitle) without its shop annotations such as 【コミック】
+// or 【電子書籍限定特典付き】, which say nothing about the book and would make unrelated titles look alike.
+// The result is turned into a MinHash signature over its character trigrams, and the signature is cut into bands
+// that are hashed into buckets (locality sensitive hashing). Only titles sharing a bucket are compared, and only
+// with a bounded number of the bucket's earlier titles, so the work grows with the number of titles rather than
+// with every pair.
+// Candidates count as duplicates when their trigram sets overlap by at least MIN_SIMILARITY and they carry the same
+// volume markers (numbers, kanji numerals, 上/中/下 and edition names such as 特装版), so different volumes and
+// editions of a series are never merged. Two listings from the same source with different bookUrls are different
+// products of that shop, however alike their titles, and are never merged either. Sources without bookUrls (animate)
+// only merge their own listings when the titles are the same up to formatting.
+public final class TitleDeduplicator {
+
+    private static final int SHINGLE_LENGTH = 3;
+
+    // 32 bands of 4 rows put titles with a similarity around 0.45 in a shared bucket half of the time,
+    // well below MIN_SIMILARITY so real duplicates are rarely missed
+    private static final int BANDS = 32;
+    private static final int ROWS = 4;
+    private static final int HASHES = BANDS * ROWS;
+
+    // Jaccard similarity of the trigram sets above which two titles are the same book
+    private static final double MIN_SIMILARITY = 0.7;
+
+    // Earlier titles of a bucket each title is compared with, keeps a bucket shared by a long series linear
+    private static final int MAX_COMPARISONS_PER_BUCKET = 64;
+
+    private static final long[] SEEDS = new long[HASHES];
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    // Special editions are separate products. 通常版 is the regular edition, so it doesn't set a listing apart
+    // from one that doesn't name its edition
+    private static final String EDITIONS = "(?:特装|限定|特別|豪華|新装|愛蔵|完全|合本|分冊|単話)版";
+
+    // Volume markers: numbers, kanji numerals, 上/中/下 volumes and special editions
+    private static final Pattern VOLUME_MARKER = Pattern.compile("\\p{N}+|[〇一二三四五六七八九十百千]+|[上中下]|" + EDITIONS);
+    private static final Pattern EDITION = Pattern.compile(EDITIONS);
+    private static final Pattern ANNOTATION = Pattern.compile("【[^】]*】|［[^］]*］|\\[[^\\]]*\\]");
+    private static final String KANJI_DIGITS = "〇一二三四五六七八九";
+
+    private TitleDeduplicator() {
+    }
+
+    // Normalized title without its bracketed annotations, or with them when that leaves nothing.
+    // Edition names are kept from the annotations, 【特装版】 names a different product than the plain title
+    public static String dedupKey(String title) {
+        String key = Titles.normalizeTitle(ANNOTATION.matcher(title).replaceAll(annotation -> editionsIn(annotation.group())));
+        return key.isEmpty() ? Titles.normalizeTitle(title) : key;
+    }
+
+    private static String editionsIn(String annotation) {
+        StringBuilder editions = new StringBuilder();
+        Matcher matcher = EDITION.matcher(annotation);
+        while (matcher.find()) {
+            editions.append(' ').append(matcher.group());
+        }
+        return editions.toString();
+    }
+
+    // Group items whose keys (see dedupKey) are near duplicates.
+    // Groups are in the order of their first item and keep the items' order, items without a key stay on their own
+    public static <T> List<List<T>> cluster(List<T> items, Function<T, String> key) {
+        int count = items.size();
+        String[] keys = new String[count];
+        long[][] shingles = new long[count][];
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            keys[i] = key.apply(items.get(i));
+            if (keys[i] == null || keys[i].isEmpty()) {
+                continue;
+            }
+            shingles[i] = shingles(keys[i]);
+            long[] signature = signature(shingles[i]);
+            for (int band = 0; band < BANDS; band++) {
+                long bucket = band;
+                for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+                    bucket = mix(bucket * 31 + signature[row]);
+                }
+                buckets.computeIfAbsent(bucket, unused -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // Union every verified pair, titles already in the same group aren't compared again
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = i;
+        }
+        for (List<Integer> bucket : buckets.values()) {
+            for (int b = 1; b < bucket.size(); b++) {
+                int second = bucket.get(b);
+                for (int a = b - 1; a >= Math.max(0, b - MAX_COMPARISONS_PER_BUCKET); a--) {
+                    int first = bucket.get(a);
+                    if (find(parents, first) != find(parents, second)
+                            && sameBook(shingles[first], shingles[second], keys[first], keys[second])) {
+                        parents[find(parents, second)] = find(parents, first);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            groups.computeIfAbsent(find(parents, i), unused -> new ArrayList<>()).add(items.get(i));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    // Merge near duplicate books into the first book of each group, which keeps the others as its duplicates.
+    // A group holding several products of one source (see sameProduct) is split so each product
+    // stays a book of its own. A canonical book still without a level takes the first level one of its duplicates has
+    public static List<Book> merge(List<Book> books) {
+        List<List<Book>> groups = cluster(books, book -> book.title() != null ? dedupKey(book.title()) : null);
+        List<Book> canonical = new ArrayList<>(groups.size());
+        for (List<Book> group : groups) {
+            List<Book> firsts = new ArrayList<>(1);
+            for (Book book : group) {
+                Book first = firsts.stream().filter(candidate -> !sameSourceProduct(candidate, book)).findFirst().orElse(null);
+                if (first == null) {
+                    firsts.add(book);
+                    continue;
+                }
+                first.addDuplicate(book);
+                if (first.level() == JlptLevel.NA && book.level() != JlptLevel.NA) {
+                    first.setLevel(book.level());
+                }
+            }
+            canonical.addAll(firsts);
+        }
+        // Split groups put their later products where the group started, keep the input order instead
+        if (canonical.size() > groups.size()) {
+            Map<Book, Integer> positions = new IdentityHashMap<>();
+            for (int i = 0; i < books.size(); i++) {
+                positions.put(books.get(i), i);
+            }
+            canonical.sort(Comparator.comparing(positions::get));
+        }
+        return canonical;
+    }
+
+    // True when first, or a listing merged into it, is another product of book's source
+    private static boolean sameSourceProduct(Book first, Book book) {
+        for (Book listing : listings(first)) {
+            for (Book other : listings(book)) {
+                if (listing.source().equals(other.source()) && !sameProduct(listing, other)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Listings of one source are the same product when they have the same bookUrl. Listings without one are
+    // compared by their dedupKey instead, which still holds the volume markers, so only exact repeats are merged
+    private static boolean sameProduct(Book listing, Book other) {
+        if (listing.bookUrl() == null || other.bookUrl() == null) {
+            return dedupKey(listing.title()).equals(dedupKey(other.title()));
+        }
+        return listing.bookUrl().equals(other.bookUrl());
+    }
+
+    private static List<Book> listings(Book book) {
+        if (book.duplicates().isEmpty()) {
+            return List.of(book);
+        }
+        List<Book> listings = new ArrayList<>(book.duplicates().size() + 1);
+        listings.add(book);
+        listings.addAll(book.duplicates());
+        return listings;
+    }
+
+    private static boolean sameBook(long[] first, long[] second, String firstKey, String secondKey) {
+        return jaccard(first, second) >= MIN_SIMILARITY && volumeMarkers(firstKey).equals(volumeMarkers(secondKey));
+    }
+
+    // Volume numbers, years, 上/中/下 and edition names in a key, in order. Numbers are compared by value,
+    // so 第二巻 and 第2巻 carry the same marker
+    private static List<String> volumeMarkers(String key) {
+        List<String> markers = new ArrayList<>();
+        Matcher matcher = VOLUME_MARKER.matcher(key);
+        while (matcher.find()) {
+            String marker = matcher.group();
+            if (Character.isDigit(marker.charAt(0))) {
+                marker = marker.replaceFirst("^0+(?=.)", "");
+            } else if (KANJI_DIGITS.indexOf(marker.charAt(0)) >= 0 || "十百千".indexOf(marker.charAt(0)) >= 0) {
+                marker = Long.toString(kanjiNumber(marker));
+            }
+            markers.add(marker);
+        }
+        return markers;
+    }
+
+    // Value of a kanji numeral, either positional (二〇二四) or with units (二十四)
+    private static long kanjiNumber(String numeral) {
+        long total = 0;
+        long current = -1;
+        for (int i = 0; i < numeral.length(); i++) {
+            char c = numeral.charAt(i);
+            int digit = KANJI_DIGITS.indexOf(c);
+            if (digit >= 0) {
+                current = Math.max(current, 0) * 10 + digit;
+            } else {
+                long unit = c == '十' ? 10 : c == '百' ? 100 : 1000;
+                total += (current < 0 ? 1 : current) * unit;
+                current = -1;
+            }
+        }
+        return total + Math.max(current, 0);
+    }
+
+    // Exact Jaccard similarity of two sorted, distinct shingle arrays
+    private static double jaccard(long[] first, long[] second) {
+        int shared = 0;
+        for (int a = 0, b = 0; a < first.length && b < second.length; ) {
+            if (first[a] == second[b]) {
+                shared++;
+                a++;
+                b++;
+            } else if (first[a] < second[b]) {
+                a++;
+            } else {
+                b++;
+            }
+        }
+        return shared / (double) (first.length + second.length - shared);
+    }
+
+    // Distinct character trigrams packed into longs and sorted, a title shorter than a trigram is one shingle
+    private static long[] shingles(String title) {
+        int length = Math.min(SHINGLE_LENGTH, title.length());
+        long[] shingles = new long[title.length() - length + 1];
+        for (int i = 0; i < shingles.length; i++) {
+            long shingle = length;
+            for (int j = i; j < i + length; j++) {
+                shingle = (shingle << 16) | title.charAt(j);
+            }
+            shingles[i] = shingle;
+        }
+        return Arrays.stream(shingles).sorted().distinct().toArray();
+    }
+
+    // Smallest hash of the shingles under each of the HASHES seeded hash functions
+    private static long[] signature(long[] shingles) {
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long shingle : shingles) {
+            for (int i = 0; i < HASHES; i++) {
+                long hash = mix(shingle ^ SEEDS[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    // SplitMix64 finalizer, spreads similar inputs over the whole long range
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static int find(int[] parents, int item) {
+        while (parents[item] != item) {
+            parents[item] = parents[parents[item]]; // Halve the path on the way up
+            item = parents[item];
+        }
+        return item;
+    }
+}
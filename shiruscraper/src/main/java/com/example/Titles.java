@@ -0,0 +1,19 @@
+package com.example;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+// Title helpers shared by deduplication, classification caching and search
+public final class Titles {
+
+    private static final Pattern NON_TITLE_CHARS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private Titles() {
+    }
+
+    // Normalize titles by removing special characters and spaces
+    public static String normalizeTitle(String title) {
+        title = Normalizer.normalize(title, Normalizer.Form.NFKC);
+        return NON_TITLE_CHARS.matcher(title).replaceAll("").toLowerCase();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example;
+
+import java.util.concurrent.TimeUnit;
+
+// Classic token bucket: holds up to `capacity` tokens and refills continuously at `refillPerSecond`.
+// acquire() blocks the calling thread until enough tokens are available.
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefillNanos;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.available = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // Take `amount` tokens, waiting for the bucket to refill if needed.
+    // Requests larger than the capacity only wait for a full bucket so they can't block forever.
+    public void acquire(double amount) throws InterruptedException {
+        double needed = Math.min(amount, capacity);
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (available >= needed) {
+                    available -= needed;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((needed - available) / refillPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Take `amount` tokens right away, letting the bucket go into debt, and return how long the caller has to wait
+    // before using them. Callers that reserve in turn get evenly spaced slots without holding a lock while waiting.
+    public synchronized long reserveNanos(double amount) {
+        refill();
+        available -= Math.min(amount, capacity);
+        return available >= 0 ? 0 : (long) Math.ceil(-available / refillPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefillNanos) * refillPerNano);
+        lastRefillNanos = now;
+    }
+}
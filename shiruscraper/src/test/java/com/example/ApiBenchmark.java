@@ -0,0 +1,99 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// BookController response generation over a synthetic honto dataset, without the HTTP server in front of it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiBenchmark {
+
+    @Param({"1000", "10000"})
+    private int catalogSize;
+
+    private Path directory;
+    private DatasetStore datasetStore;
+    private BookController controller;
+    private byte[] datasetBytes;
+    private String etag;
+    private String query;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Write the dataset the same way the scrapers do and serve it from the store's data directory
+        directory = Files.createTempDirectory("api-benchmark");
+        List<Book> books = BenchmarkData.books(catalogSize);
+        try (BookJsonWriter writer = new BookJsonWriter(directory.resolve("books_by_jlpt.json"))) {
+            for (Map.Entry<JlptLevel, List<Book>> entry : JlptLevel.bucket(books).entrySet()) {
+                writer.startLevel(entry.getKey().label());
+                for (Book book : entry.getValue()) {
+                    writer.writeBook(book);
+                }
+                writer.endLevel();
+            }
+            writer.commit();
+        }
+        datasetBytes = Files.readAllBytes(directory.resolve("books_by_jlpt.json"));
+
+        datasetStore = new DatasetStore(directory.toString());
+        controller = new BookController(datasetStore, new BookIndex(datasetStore), new CoverCache(directory.resolve("covers")), 60, 300);
+        etag = datasetStore.get("books").etag();
+        query = books.get(catalogSize / 2).title().substring(0, 3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("books_by_jlpt.json"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getBooksGzip() {
+        return controller.getBooks(null, "gzip, deflate, br");
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getBooksNotModified() {
+        return controller.getBooks(etag, "gzip, deflate, br");
+    }
+
+    // Cost of swapping in a new dataset version (gzip and ETag), paid once per publish instead of per request
+    @Benchmark
+    public DatasetStore.Dataset publishDataset() throws IOException {
+        datasetStore.publish("books", datasetBytes, 0);
+        return datasetStore.get("books");
+    }
+
+    @Benchmark
+    public ResponseEntity<?> searchByTitle() {
+        return controller.searchBooks(null, null, query, "contains", null, 20);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> searchByLevel() {
+        return controller.searchBooks("N3", "honto", null, "contains", null, 20);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic catalogs and the saved HTML fixtures shared by the JMH benchmarks.
+// Everything is generated from a fixed seed so runs on different commits measure the same data.
+public final class BenchmarkData {
+
+    private static final String[] WORDS = {"ゆめ", "ひかり", "ねこ", "そら", "うみ", "まほう", "ぼうけん", "ともだち", "がっこう", "ドラゴン",
+            "勇者", "魔王", "転生", "異世界", "恋", "物語", "日常", "探偵", "星", "森"};
+
+    private BenchmarkData() {
+    }
+
+    // Titles shaped like the scraped ones, some with the promotional suffixes the classifier is told to ignore
+    public static List<String> titles(int count) {
+        Random random = new Random(42);
+        List<String> titles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int word = 0, words = 2 + random.nextInt(3); word < words; word++) {
+                title.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            title.append(' ').append(1 + random.nextInt(30)).append("巻");
+            if (i % 5 == 0) {
+                title.append(" 【電子書籍限定書き下ろしSS付き】");
+            }
+            titles.add(title.toString());
+        }
+        return titles;
+    }
+
+    // Honto-style books spread over every level
+    public static List<Book> books(int count) {
+        List<String> titles = titles(count);
+        JlptLevel[] levels = JlptLevel.values();
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book("honto", levels[i % levels.length], titles.get(i),
+                    "https://image.honto.jp/item/1/75/" + (100000 + i) + ".jpg",
+                    "https://honto.jp/ebook/pd_" + (30000000 + i) + ".html"));
+        }
+        return books;
+    }
+
+    // Contents of a file in src/test/resources/fixtures
+    public static String fixture(String name) {
+        try (InputStream in = BenchmarkData.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing fixture " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
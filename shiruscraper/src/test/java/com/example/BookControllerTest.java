@@ -0,0 +1,98 @@
+package com.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class BookControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String BOOKS = "{\"N5\":[{\"title\":\"ねこがっこう 3巻\",\"bookUrl\":\"https://honto.jp/ebook/pd_1.html\"}]}";
+
+    private BookController controller;
+    private String etag;
+
+    @Before
+    public void setUp() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Files.writeString(directory.resolve("books_by_jlpt.json"), BOOKS);
+        DatasetStore datasetStore = new DatasetStore(directory.toString());
+        controller = new BookController(datasetStore, new BookIndex(datasetStore), new CoverCache(directory.resolve("covers")), 60, 300);
+        etag = datasetStore.get("books").etag();
+    }
+
+    private static String opaque(String etag) {
+        return etag.substring(2);
+    }
+
+    @Test
+    public void plainResponseVariesByAcceptEncoding() {
+        ResponseEntity<byte[]> response = controller.getBooks(null, null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(BOOKS, new String(response.getBody(), StandardCharsets.UTF_8));
+        assertEquals(etag, response.getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+        assertEquals("public, max-age=60, stale-while-revalidate=300", response.getHeaders().getCacheControl());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void gzipIsSentWhenAccepted() throws Exception {
+        ResponseEntity<byte[]> response = controller.getBooks(null, "br, gzip;q=0.8");
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            assertEquals(BOOKS, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // Refused with q=0, or not listed at all
+        assertArrayEquals(BOOKS.getBytes(StandardCharsets.UTF_8), controller.getBooks(null, "gzip;q=0, identity").getBody());
+        assertArrayEquals(BOOKS.getBytes(StandardCharsets.UTF_8), controller.getBooks(null, "br").getBody());
+    }
+
+    @Test
+    public void currentCopiesGetNotModified() {
+        ResponseEntity<byte[]> response = controller.getBooks(etag, "gzip");
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(etag, response.getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+
+        // Weak comparison: a proxy may drop the W/ prefix, clients may send several tags or *
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.getBooks(opaque(etag), null).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.getBooks("W/\"old\", " + etag, null).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.getBooks("*", null).getStatusCode());
+    }
+
+    @Test
+    public void staleCopiesGetTheDataset() {
+        assertEquals(HttpStatus.OK, controller.getBooks("W/\"old\"", null).getStatusCode());
+        // A tag that only contains the current one isn't a match
+        assertEquals(HttpStatus.OK, controller.getBooks("W/\"x" + opaque(etag).substring(1), null).getStatusCode());
+    }
+
+    @Test
+    public void missingDatasetIsAServerError() {
+        // books_by_jlpt.json has no bundled copy to fall back to
+        DatasetStore empty = new DatasetStore(folder.getRoot().toPath().resolve("missing").toString());
+        BookController controller = new BookController(empty, new BookIndex(empty), new CoverCache(folder.getRoot().toPath()), 60, 300);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, controller.getBooks(null, null).getStatusCode());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BookIndexTest {
+
+    // Serves datasets set by the test instead of reading files
+    private static class StubDatasetStore extends DatasetStore {
+        private final Map<String, Dataset> datasets = new HashMap<>();
+
+        StubDatasetStore() {
+            super(".");
+        }
+
+        @Override
+        public synchronized void reloadChanged() {
+        }
+
+        @Override
+        public Dataset get(String name) {
+            return datasets.get(name);
+        }
+
+        void set(String name, String json) {
+            datasets.put(name, new Dataset(json.getBytes(StandardCharsets.UTF_8), new byte[0], "\"" + json.hashCode() + "\"", 0));
+        }
+    }
+
+    private static StubDatasetStore store() {
+        StubDatasetStore store = new StubDatasetStore();
+        store.set("books", "{\"N5\": [{\"title\": \"ねこのおうち\", \"bookUrl\": \"https://honto.jp/1\"},"
+                + " {\"title\": \"ドラゴン学園\", \"bookUrl\": \"https://honto.jp/2\"}],"
+                + " \"N3\": [{\"title\": \"ねこ探偵の事件簿\", \"bookUrl\": \"https://honto.jp/3\"}]}");
+        store.set("ani-books", "{\"N5\": [{\"title\": \"ねこと魔法使い\", \"bookUrl\": \"https://www.animate-onlineshop.jp/4\"}]}");
+        store.set("ehonnavi-books", "{\"N5\": [{\"title\": \"うみへいこう\", \"bookUrl\": \"https://www.ehonnavi.net/5\"}]}");
+        return store;
+    }
+
+    private static List<String> titles(BookIndex.SearchPage page) {
+        List<String> titles = new ArrayList<>();
+        for (BookIndex.IndexedBook book : page.items()) {
+            titles.add(book.title());
+        }
+        return titles;
+    }
+
+    @Test
+    public void cursorsWalkEveryBookOnce() {
+        BookIndex index = new BookIndex(store());
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            BookIndex.SearchPage page = index.search(null, null, null, false, cursor, 2);
+            seen.addAll(titles(page));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(List.of("ねこのおうち", "ドラゴン学園", "ねこ探偵の事件簿", "ねこと魔法使い", "うみへいこう"), seen);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    public void lastFullPageHasNoNextCursor() {
+        BookIndex index = new BookIndex(store());
+        BookIndex.SearchPage first = index.search(null, "honto", null, false, null, 2);
+        assertEquals(2, first.items().size());
+        assertNotNull(first.nextCursor());
+
+        // Exactly limit matches are left, so there is no page after this one
+        BookIndex.SearchPage second = index.search(null, null, "ねこ", false, null, 3);
+        assertEquals(3, second.items().size());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    public void filtersIntersect() {
+        BookIndex index = new BookIndex(store());
+        assertEquals(List.of("ねこのおうち", "ねこと魔法使い"), titles(index.search("N5", null, "ねこ", false, null, 10)));
+        assertEquals(List.of("ねこと魔法使い"), titles(index.search("N5", "animate", "ねこ", false, null, 10)));
+        assertEquals(List.of("ねこ探偵の事件簿"), titles(index.search("N3", "honto", "ねこ", true, null, 10)));
+        assertEquals(List.of(), titles(index.search("N3", "ehonnavi", null, false, null, 10)));
+        assertEquals(List.of(), titles(index.search(null, null, "探偵", true, null, 10)));
+    }
+
+    @Test
+    public void cursorFromAnOlderCatalogIsRejected() {
+        StubDatasetStore store = store();
+        BookIndex index = new BookIndex(store);
+        String cursor = index.search(null, null, null, false, null, 1).nextCursor();
+
+        store.set("ehonnavi-books", "{\"N5\": [{\"title\": \"やまへいこう\", \"bookUrl\": \"https://www.ehonnavi.net/6\"}]}");
+        try {
+            index.search(null, null, null, false, cursor, 1);
+            fail("Expected the stale cursor to be rejected");
+        } catch (BookIndex.InvalidCursorException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void malformedCursorsAreRejected() {
+        BookIndex index = new BookIndex(store());
+        for (String cursor : List.of("abc", "1.x", "1", "1.2.3")) {
+            try {
+                index.search(null, null, null, false, cursor, 1);
+                fail("Expected " + cursor + " to be rejected");
+            } catch (BookIndex.InvalidCursorException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void mergedBooksAreFiledUnderTheCanonicalLevel() {
+        StubDatasetStore store = store();
+        store.set("ani-books", "{\"N4\": [{\"title\": \"【コミック】ねこ探偵の事件簿\", \"bookUrl\": \"https://www.animate-onlineshop.jp/6\"}],"
+                + " \"N5\": [{\"title\": \"ねこと魔法使い\", \"bookUrl\": \"https://www.animate-onlineshop.jp/4\","
+                + " \"duplicates\": [{\"title\": \"ねこと魔法使い\", \"bookUrl\": \"https://www.ehonnavi.net/7\", \"source\": \"ehonnavi\"}]}]}");
+        store.set("ehonnavi-books", "{\"N5\": [{\"title\": \"ねこと魔法使い\", \"bookUrl\": \"https://www.ehonnavi.net/7\","
+                + " \"duplicates\": [{\"title\": \"ねこと魔法使い\", \"bookUrl\": \"https://www.animate-onlineshop.jp/4\", \"source\": \"animate\"}]}]}");
+        BookIndex index = new BookIndex(store);
+
+        BookIndex.SearchPage n3 = index.search("N3", null, "ねこ探偵", false, null, 10);
+        assertEquals(List.of("ねこ探偵の事件簿"), titles(n3));
+        assertEquals("animate", n3.items().get(0).duplicates().get(0).source());
+        assertEquals(List.of(), titles(index.search("N4", null, null, false, null, 10)));
+
+        // Both sources publish the book and reference each other, the index lists it once with both listings
+        BookIndex.SearchPage merged = index.search(null, "ehonnavi", "魔法", false, null, 10);
+        assertEquals(List.of("ねこと魔法使い"), titles(merged));
+        assertEquals("animate", merged.items().get(0).source());
+        assertEquals(List.of(new BookIndex.Duplicate("ehonnavi", "ねこと魔法使い", "https://www.ehonnavi.net/7")),
+                merged.items().get(0).duplicates());
+    }
+}
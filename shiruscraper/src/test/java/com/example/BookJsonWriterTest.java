@@ -0,0 +1,60 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BookJsonWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(BookJsonWriter writer, String title) throws Exception {
+        writer.startLevel("N5");
+        writer.writeBook(new Book("honto", JlptLevel.N5, title, null, "https://honto.jp/ebook/pd_1.html"));
+        writer.endLevel();
+    }
+
+    private List<Path> files() throws Exception {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    public void writersOfTheSameTargetDontShareATempFile() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("honto.json");
+        try (BookJsonWriter first = new BookJsonWriter(target); BookJsonWriter second = new BookJsonWriter(target)) {
+            write(first, "うみ 1巻");
+            write(second, "そら 2巻");
+            first.commit();
+            second.commit();
+        }
+
+        // The last commit wins with a complete file of its own
+        JsonNode books = new ObjectMapper().readTree(target.toFile());
+        assertEquals("そら 2巻", books.path("N5").get(0).path("title").asText());
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    public void uncommittedOutputLeavesTheTargetAsItWas() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("honto.json");
+        Files.writeString(target, "{}");
+        try (BookJsonWriter writer = new BookJsonWriter(target)) {
+            write(writer, "うみ 1巻");
+        }
+
+        assertEquals("{}", Files.readString(target));
+        assertEquals(List.of(target), files());
+    }
+}
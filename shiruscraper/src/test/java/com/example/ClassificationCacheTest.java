@@ -0,0 +1,89 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassificationCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("classification-cache.tsv");
+    }
+
+    @Test
+    public void levelsAreReadBackByNormalizedTitle() throws Exception {
+        ClassificationCache cache = new ClassificationCache(file());
+        cache.put("v1", "ねこがっこう 3巻", "N4");
+        cache.put("v1", "うみ", "N5");
+        cache.put("v1", "うみ", "N3"); // Reclassified, the later line wins
+
+        ClassificationCache reloaded = new ClassificationCache(file());
+        assertEquals("N4", reloaded.get("v1", "ねこがっこう 3巻"));
+        assertEquals("N4", reloaded.get("v1", "ねこがっこう ３巻")); // Full width digits normalize to the same title
+        assertEquals("N3", reloaded.get("v1", "うみ"));
+        assertNull(reloaded.get("v1", "そら"));
+        assertEquals(3, Files.readAllLines(file()).size());
+    }
+
+    @Test
+    public void unchangedLevelsAreNotAppendedAgain() throws Exception {
+        ClassificationCache cache = new ClassificationCache(file());
+        cache.put("v1", "うみ", "N5");
+        cache.put("v1", "うみ", "N5");
+        new ClassificationCache(file()).put("v1", "うみ", "N5");
+
+        assertEquals(List.of("v1\tうみ\tN5"), Files.readAllLines(file()));
+    }
+
+    @Test
+    public void versionsAreKeptApart() throws Exception {
+        ClassificationCache cache = new ClassificationCache(file());
+        cache.put("gpt-4o/1", "うみ", "N5");
+        cache.put("gpt-4o/2", "うみ", "N2");
+
+        ClassificationCache reloaded = new ClassificationCache(file());
+        assertEquals("N5", reloaded.get("gpt-4o/1", "うみ"));
+        assertEquals("N2", reloaded.get("gpt-4o/2", "うみ"));
+        assertNull(reloaded.get("gpt-4o/3", "うみ"));
+    }
+
+    @Test
+    public void tornLastLineIsCutOff() throws Exception {
+        new ClassificationCache(file()).put("v1", "ねこがっこう 3巻", "N4");
+        // Crashed while writing the level of the next title
+        Files.write(file(), "v1\tうみ\tN".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        ClassificationCache cache = new ClassificationCache(file());
+        assertEquals("N4", cache.get("v1", "ねこがっこう 3巻"));
+        assertNull(cache.get("v1", "うみ"));
+        cache.put("v1", "そら", "N3");
+
+        // The new line went after the last complete one, not after the torn one
+        assertEquals(List.of("v1\t" + Titles.normalizeTitle("ねこがっこう 3巻") + "\tN4", "v1\tそら\tN3"), Files.readAllLines(file()));
+        ClassificationCache reloaded = new ClassificationCache(file());
+        assertEquals("N3", reloaded.get("v1", "そら"));
+        assertNull(reloaded.get("v1", "うみ"));
+    }
+
+    @Test
+    public void titlesThatNormalizeToNothingAreNotCached() throws Exception {
+        ClassificationCache cache = new ClassificationCache(file());
+        cache.put("v1", " ", "N5");
+
+        assertNull(cache.get("v1", " "));
+        assertFalse(Files.exists(file()));
+    }
+}
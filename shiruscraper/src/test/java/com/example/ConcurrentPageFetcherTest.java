@@ -0,0 +1,39 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConcurrentPageFetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void put(ReplayArchive archive, String url, int status, String html) throws Exception {
+        archive.put(new ReplayArchive.Entry(ReplayArchive.key("GET", url, null), "GET", url, status,
+                Map.of("Content-Type", "text/html; charset=UTF-8"), html.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void unexpectedNotModifiedHasNoItems() throws Exception {
+        ReplayArchive archive = new ReplayArchive(folder.getRoot().toPath());
+        put(archive, "https://honto.jp/ebook/pd_1.html", 200, "<div class=\"title\">ねこがっこう 3巻</div>");
+        put(archive, "https://honto.jp/ebook/pd_2.html", 304, "");
+        ReplayServer server = new ReplayServer(archive, 2, 0, 0, 0, 1);
+        server.start();
+
+        try (ConcurrentPageFetcher fetcher = new ConcurrentPageFetcher(HtmlFetcher.replaying(server), 2, 2)) {
+            assertEquals(List.of(Map.of("title", "ねこがっこう 3巻")), fetcher.submitItems("https://honto.jp/ebook/pd_1.html", "div.title",
+                    element -> Map.of("title", element.text()), 1, items -> items).get());
+            // The request carried no validators, the 304 is answered with an empty page instead of failing
+            assertEquals(List.of(), fetcher.submitItems("https://honto.jp/ebook/pd_2.html", "div.title",
+                    element -> Map.of("title", element.text()), 1, items -> items).get());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CrawlJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Map<String, String> ITEM = Map.of("title", "ねこがっこう 3巻", "bookUrl", "https://example.test/3");
+
+    private Path directory() {
+        return folder.getRoot().toPath();
+    }
+
+    private Path file() {
+        return directory().resolve("test.jsonl");
+    }
+
+    private static List<Future<Map<String, String>>> finished(Map<String, String> item) {
+        return List.of(CompletableFuture.completedFuture(item));
+    }
+
+    @Test
+    public void resumesFinishedPagesAndLevels() throws Exception {
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            journal.recordPage(1, 4, finished(ITEM));
+            journal.recordLevels(Map.of("ねこがっこう 3巻", "N4"));
+            journal.awaitPages();
+        }
+
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            assertEquals(List.of(ITEM), journal.page(1).items());
+            assertEquals(4, (int) journal.page(1).lastPage());
+            assertNull(journal.page(2));
+            assertEquals("N4", journal.level("ねこがっこう 3巻"));
+            assertNull(journal.level("うみ"));
+        }
+    }
+
+    @Test
+    public void tornLastLineIsCutOff() throws Exception {
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            journal.recordPage(1, 4, finished(ITEM));
+            journal.awaitPages();
+        }
+        Files.write(file(), "{\"type\":\"page\",\"page\":2,\"lastPa".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            assertEquals(List.of(ITEM), journal.page(1).items());
+            assertNull(journal.page(2));
+            journal.recordLevels(Map.of("うみ", "N5"));
+        }
+
+        // The new line went after the last complete one, not after the torn one
+        List<String> lines = Files.readAllLines(file());
+        assertEquals(3, lines.size());
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            assertEquals(List.of(ITEM), journal.page(1).items());
+            assertEquals("N5", journal.level("うみ"));
+        }
+    }
+
+    @Test
+    public void tooOldJournalIsDiscarded() throws Exception {
+        long startedAt = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(25);
+        Files.write(file(), ("{\"type\":\"start\",\"startedAt\":" + startedAt + ",\"incremental\":false}\n"
+                + "{\"type\":\"levels\",\"levels\":{\"うみ\":\"N1\"}}\n").getBytes(StandardCharsets.UTF_8));
+
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            assertNull(journal.level("うみ"));
+        }
+        List<String> lines = Files.readAllLines(file());
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"type\":\"start\""));
+    }
+
+    @Test
+    public void journalOfTheOtherModeIsDiscarded() throws Exception {
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            journal.recordPage(1, 4, finished(ITEM));
+            journal.awaitPages();
+        }
+
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", true)) {
+            assertNull(journal.page(1));
+        }
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", true)) {
+            assertNull(journal.page(1)); // Started over in incremental mode, nothing was journaled since
+        }
+    }
+
+    @Test
+    public void fanOutPagesAreJournaledOnceTheirFetchesFinish() throws Exception {
+        Map<String, String> second = Map.of("title", "うみ 1巻", "bookUrl", "https://example.test/u1");
+        CompletableFuture<Map<String, String>> slowFetch = new CompletableFuture<>();
+        CompletableFuture<Map<String, String>> failedFetch = new CompletableFuture<>();
+        failedFetch.completeExceptionally(new IllegalStateException("503"));
+
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            // Pages are handed over in page order while their detail fetches are still running
+            journal.recordPage(1, 3, finished(ITEM));
+            journal.recordPage(2, 3, List.of(slowFetch, CompletableFuture.completedFuture(second)));
+            journal.recordPage(3, 3, List.of(failedFetch));
+            slowFetch.complete(ITEM);
+            journal.awaitPages();
+        }
+
+        try (CrawlJournal journal = CrawlJournal.openIn(directory(), "test", false)) {
+            assertEquals(List.of(ITEM), journal.page(1).items());
+            assertEquals(List.of(ITEM, second), journal.page(2).items());
+            assertNull(journal.page(3)); // Fetched again on the restarted run
+            journal.finish();
+        }
+        assertFalse(Files.exists(file()));
+    }
+}
@@ -0,0 +1,236 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.nodes.Element;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Runs crawls and listing page reads against a ReplayServer serving a made-up shop, or the fixtures, from a replay archive
+public class CrawlOrchestratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int PAGES = 5;
+
+    // Listing with two books a page and a pager that only shows the pages next to the current one
+    private static final class TestShop implements SourceScraper {
+        public String source() {
+            return "testshop";
+        }
+
+        public String outputFile() {
+            return "testshop.json";
+        }
+
+        public String knownKeyField() {
+            return "bookUrl";
+        }
+
+        public String listingUrl(int page) {
+            return "https://shop.example.test/new?page=" + page;
+        }
+
+        public String pageParameter() {
+            return "page";
+        }
+
+        public String itemSelector() {
+            return "li.book";
+        }
+
+        public Map<String, String> extractItem(Element element) {
+            Element link = element.selectFirst("a");
+            return Map.of("title", link.text(), "bookUrl", link.absUrl("href"));
+        }
+    }
+
+    private final TestShop shop = new TestShop();
+
+    private static String title(int page, int position) {
+        return "てすと文庫 第" + ((page - 1) * 2 + position) + "巻";
+    }
+
+    private static String listingPage(int page, String titlePrefix) {
+        StringBuilder pager = new StringBuilder();
+        for (int linked = Math.max(1, page - 2); linked <= Math.min(PAGES, page + 2); linked++) {
+            pager.append("<a href=\"/new?page=").append(linked).append("\">").append(linked).append("</a>");
+        }
+        return listingPage(page, titlePrefix, pager + "<a href=\"/ranking?page=99\">ranking</a>");
+    }
+
+    private static String listingPage(int page, String titlePrefix, String pager) {
+        StringBuilder html = new StringBuilder("<html><body><ul>");
+        for (int position = 1; position <= 2; position++) {
+            html.append("<li class=\"book\"><a href=\"/books/").append((page - 1) * 2 + position).append("\">")
+                    .append(titlePrefix).append(title(page, position)).append("</a></li>");
+        }
+        return html.append("</ul><div class=\"pager\">").append(pager).append("</div></body></html>").toString();
+    }
+
+    private static void put(ReplayArchive archive, String url, Map<String, String> headers, String html) throws Exception {
+        archive.put(new ReplayArchive.Entry(ReplayArchive.key("GET", url, null), "GET", url, 200, headers,
+                html.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void put(ReplayArchive archive, String url, String html) throws Exception {
+        put(archive, url, Map.of("Content-Type", "text/html; charset=UTF-8"), html);
+    }
+
+    private HtmlFetcher replaying(ReplayArchive archive) throws Exception {
+        ReplayServer server = new ReplayServer(archive, 4, 0, 0, 0, 1);
+        server.start();
+        return HtmlFetcher.replaying(server);
+    }
+
+    private CrawlOrchestrator.ListingReader reader(SourceScraper source, HtmlFetcher fetcher) throws Exception {
+        return new CrawlOrchestrator.ListingReader(source, null, fetcher, new PageCache(folder.newFolder().toPath()));
+    }
+
+    private static List<String> titles(int pages) {
+        List<String> titles = new ArrayList<>();
+        for (int page = 1; page <= pages; page++) {
+            titles.add(title(page, 1));
+            titles.add(title(page, 2));
+        }
+        return titles;
+    }
+
+    // Odd pages are validated by their ETag, even pages by their Last-Modified date
+    private void record(ReplayArchive archive, String titlePrefix) throws Exception {
+        for (int page = 1; page <= PAGES; page++) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "text/html; charset=UTF-8");
+            if (page % 2 == 1) {
+                headers.put("ETag", "\"page-" + page + "\"");
+            } else {
+                headers.put("Last-Modified", "Tue, 15 Oct 2024 08:00:0" + page + " GMT");
+            }
+            put(archive, shop.listingUrl(page), headers, listingPage(page, titlePrefix));
+        }
+    }
+
+    private List<String> publishedTitles(Path output) throws Exception {
+        JsonNode books = new ObjectMapper().readTree(output.resolve(shop.outputFile()).toFile());
+        List<String> titles = new ArrayList<>();
+        for (JsonNode book : books.path(JlptLevel.NA.label())) {
+            titles.add(book.path("title").asText());
+        }
+        return titles;
+    }
+
+    @Test
+    public void replayedListingIsPublishedInPageOrderAndRevalidatedOnTheNextRun() throws Exception {
+        ReplayArchive archive = new ReplayArchive(folder.newFolder("archive").toPath());
+        record(archive, "");
+        HtmlFetcher fetcher = replaying(archive);
+        PageCache pageCache = new PageCache(folder.newFolder("page-cache").toPath());
+        Path output = folder.newFolder("output").toPath();
+
+        // Page 1 only links up to page 3, the later pages are found from the pagers of the pages fetched after it
+        List<CrawlOrchestrator.SourceResult> results = new CrawlOrchestrator(List.of(shop), output, 4, false, fetcher, pageCache).run();
+        assertEquals(List.of(new CrawlOrchestrator.SourceResult("testshop", 2 * PAGES, true)), results);
+        List<String> expected = titles(PAGES);
+        assertEquals(expected, publishedTitles(output));
+
+        // The pages changed but kept their validators, so the server answers 304 and the cached items are published
+        record(archive, "【新装】");
+        new CrawlOrchestrator(List.of(shop), output, 4, false, fetcher, pageCache).run();
+        assertEquals(expected, publishedTitles(output));
+        assertTrue(pageCache.get(shop.listingUrl(2), shop.extractorVersion()).lastModified() != null);
+    }
+
+    @Test
+    public void incrementalCrawlStopsAtTheFirstFullyKnownPage() throws Exception {
+        ReplayArchive archive = new ReplayArchive(folder.newFolder("archive").toPath());
+        record(archive, "");
+        Path output = folder.newFolder("output").toPath();
+        new CrawlOrchestrator(List.of(shop), output, 4, true, replaying(archive), new PageCache(folder.newFolder().toPath())).run();
+        assertEquals(titles(PAGES), publishedTitles(output));
+
+        // Two new books pushed the old page 1 to page 2. Page 3 holds books that would only show up if the crawl went on
+        ReplayArchive newer = new ReplayArchive(folder.newFolder("newer").toPath());
+        String pager = "<a href=\"/new?page=1\">1</a><a href=\"/new?page=2\">2</a><a href=\"/new?page=3\">3</a>";
+        put(newer, shop.listingUrl(1), listingPage(51, "", pager));
+        put(newer, shop.listingUrl(2), listingPage(1, "", pager));
+        put(newer, shop.listingUrl(3), listingPage(52, "", pager));
+        List<CrawlOrchestrator.SourceResult> results =
+                new CrawlOrchestrator(List.of(shop), output, 4, true, replaying(newer), new PageCache(folder.newFolder().toPath())).run();
+
+        assertEquals(List.of(new CrawlOrchestrator.SourceResult("testshop", 2, true)), results);
+        List<String> expected = new ArrayList<>(List.of(title(51, 1), title(51, 2)));
+        expected.addAll(titles(PAGES));
+        assertEquals(expected, publishedTitles(output));
+    }
+
+    @Test
+    public void listingWithoutPagerIsWalkedUntilAPageIsMissing() throws Exception {
+        ReplayArchive archive = new ReplayArchive(folder.newFolder("archive").toPath());
+        for (int page = 1; page <= 3; page++) {
+            put(archive, shop.listingUrl(page), listingPage(page, "", ""));
+        }
+        Path output = folder.newFolder("output").toPath();
+
+        // Page 4 isn't in the archive, the replay server answers 404 for it
+        new CrawlOrchestrator(List.of(shop), output, 4, false, replaying(archive), new PageCache(folder.newFolder().toPath())).run();
+        assertEquals(titles(3), publishedTitles(output));
+    }
+
+    @Test
+    public void pagerLinksOnlyCountForTheListingPathAndPageParameter() throws Exception {
+        ReplayArchive archive = new ReplayArchive(folder.newFolder("archive").toPath());
+        put(archive, shop.listingUrl(1), listingPage(1, "", "<a href=\"/new?page=2\">2</a>"
+                + "<a href=\"/new?page=3#books\">3</a>"
+                + "<a href=\"https://shop.example.test/new?sort=date&amp;page=4&amp;view=list\">4</a>"
+                + "<a href=\"/ranking?page=50\">ranking</a>"
+                + "<a href=\"/new?subpage=60\">other parameter</a>"
+                + "<a href=\"/new?page=123456\">too long</a>"
+                + "<a href=\"/new?page=last\">not a number</a>"));
+
+        CrawlOrchestrator.ListingPage listing = reader(shop, replaying(archive)).fetch(1);
+        assertEquals(4, listing.lastPage());
+        assertEquals(List.of(title(1, 1), title(1, 2)), listing.items().stream().map(item -> item.get("title")).toList());
+    }
+
+    @Test
+    public void eachSourceFindsItsLastPageInThePagerOfPageOne() throws Exception {
+        ReplayArchive archive = new ReplayArchive(folder.newFolder("archive").toPath());
+        SourceScraper honto = new WebScraper();
+        SourceScraper animate = new AniOnline();
+        SourceScraper ehonnavi = new EhonnaviScraper();
+        put(archive, honto.listingUrl(1), BenchmarkData.fixture("honto-listing.html"));
+        put(archive, animate.listingUrl(1), BenchmarkData.fixture("animate-listing.html"));
+        put(archive, ehonnavi.listingUrl(1), BenchmarkData.fixture("ehonnavi-listing.html"));
+        HtmlFetcher fetcher = replaying(archive);
+
+        CrawlOrchestrator.ListingReader hontoReader = reader(honto, fetcher);
+        CrawlOrchestrator.ListingPage hontoPage = hontoReader.fetch(1);
+        assertEquals(40, hontoPage.items().size());
+        assertEquals(12, hontoPage.lastPage());
+        assertEquals(12, hontoReader.capped(hontoPage.lastPage()));
+
+        CrawlOrchestrator.ListingPage animatePage = reader(animate, fetcher).fetch(1);
+        assertEquals(40, animatePage.items().size());
+        assertEquals(19, animatePage.lastPage());
+
+        // ehonnavi's pager goes on for 35 pages, only the first 20 are crawled
+        CrawlOrchestrator.ListingReader ehonnaviReader = reader(ehonnavi, fetcher);
+        CrawlOrchestrator.ListingPage ehonnaviPage = ehonnaviReader.fetch(1);
+        assertEquals(40, ehonnaviPage.items().size());
+        assertEquals(35, ehonnaviPage.lastPage());
+        assertEquals(20, ehonnaviReader.capped(ehonnaviPage.lastPage()));
+        assertEquals(7, ehonnaviReader.capped(7));
+    }
+}
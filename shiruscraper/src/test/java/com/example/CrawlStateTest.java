@@ -0,0 +1,96 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CrawlStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // honto's previous output: one book with a merged honto listing and a reference to an ehonnavi listing
+    private static final String PREVIOUS = "{"
+            + "\"N5\":[{\"title\":\"ねこがっこう 1巻\",\"bookUrl\":\"https://honto.jp/1\",\"coverId\":\"c1\",\"duplicates\":["
+            + "{\"title\":\"【コミック】ねこがっこう 1巻\",\"bookUrl\":\"https://honto.jp/1b\"},"
+            + "{\"title\":\"ねこがっこう（1）\",\"bookUrl\":\"https://www.ehonnavi.net/1\",\"source\":\"ehonnavi\"}]}],"
+            + "\"N4\":[{\"title\":\"うみ 2巻\",\"bookUrl\":\"https://honto.jp/2\"}],"
+            + "\"N0\":[{\"title\":\"unknown level\",\"bookUrl\":\"https://honto.jp/3\"}]}";
+
+    private CrawlState load(String keyField) throws Exception {
+        Path file = folder.getRoot().toPath().resolve("books_by_jlpt.json");
+        Files.writeString(file, PREVIOUS);
+        return CrawlState.load(file.toString(), "honto", keyField);
+    }
+
+    private static Map<String, String> item(String bookUrl) {
+        return Map.of("title", "any", "bookUrl", bookUrl);
+    }
+
+    @Test
+    public void ownListingsAreKnownOtherSourcesReferencesAreNot() throws Exception {
+        CrawlState state = load("bookUrl");
+        assertTrue(state.isKnown(item("https://honto.jp/1")));
+        assertTrue(state.isKnown(item("https://honto.jp/1b")));
+        assertTrue(state.isKnown(item("https://honto.jp/2")));
+        assertFalse(state.isKnown(item("https://www.ehonnavi.net/1")));
+        assertFalse(state.isKnown(item("https://honto.jp/3"))); // Its level couldn't be read
+        assertFalse(state.isKnown(Map.of("title", "うみ 2巻")));
+    }
+
+    @Test
+    public void booksAreKnownByTitleForSourcesWithoutUrls() throws Exception {
+        CrawlState state = load("title");
+        assertTrue(state.isKnown(Map.of("title", "うみ 2巻")));
+        assertFalse(state.isKnown(Map.of("title", "うみ 3巻")));
+    }
+
+    @Test
+    public void onlyPagesWithBooksThatAreAllKnownAreDone() throws Exception {
+        CrawlState state = load("bookUrl");
+        assertTrue(state.allKnown(List.of(item("https://honto.jp/1"), item("https://honto.jp/2"))));
+        assertFalse(state.allKnown(List.of(item("https://honto.jp/1"), item("https://honto.jp/4"))));
+        // An empty page says nothing about the pages after it
+        assertFalse(state.allKnown(List.of()));
+    }
+
+    @Test
+    public void previousBooksFollowTheNewOnesUnlessCrawledAgain() throws Exception {
+        CrawlState state = load("bookUrl");
+        Book fresh = new Book("honto", JlptLevel.N3, "そら 1巻", null, "https://honto.jp/5");
+        Book recrawled = new Book("honto", JlptLevel.N3, "うみ 2巻", null, "https://honto.jp/2");
+        List<Book> books = new ArrayList<>(List.of(fresh));
+        state.appendPreviousBooks(List.of(fresh, recrawled), books);
+
+        assertEquals(2, books.size());
+        Book previous = books.get(1);
+        assertEquals("ねこがっこう 1巻", previous.title());
+        assertEquals(JlptLevel.N5, previous.level());
+        assertEquals("c1", previous.coverId());
+        assertEquals(List.of("honto", "ehonnavi"), previous.duplicates().stream().map(Book::source).toList());
+    }
+
+    @Test
+    public void missingOrUnreadableResultsKnowNothing() throws Exception {
+        CrawlState missing = CrawlState.load(folder.getRoot().toPath().resolve("none.json").toString(), "honto", "bookUrl");
+        assertFalse(missing.isKnown(item("https://honto.jp/1")));
+
+        Path broken = folder.getRoot().toPath().resolve("broken.json");
+        Files.writeString(broken, "{\"N5\":[{\"title\":");
+        CrawlState unreadable = CrawlState.load(broken.toString(), "honto", "bookUrl");
+        assertFalse(unreadable.isKnown(item("https://honto.jp/1")));
+        List<Book> books = new ArrayList<>();
+        unreadable.appendPreviousBooks(List.of(), books);
+        assertTrue(books.isEmpty());
+    }
+}
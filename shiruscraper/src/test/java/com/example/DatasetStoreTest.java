@@ -0,0 +1,69 @@
+package com.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DatasetStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String content, long modifiedMillis) throws Exception {
+        Path file = folder.getRoot().toPath().resolve("books_by_jlpt.json");
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedMillis));
+        return file;
+    }
+
+    @Test
+    public void datasetIsReloadedWhenItsModificationTimeChanges() throws Exception {
+        write("{\"N5\":[]}", 1_000_000);
+        DatasetStore store = new DatasetStore(folder.getRoot().toString());
+        DatasetStore.Dataset first = store.get("books");
+        assertEquals("{\"N5\":[]}", new String(first.bytes(), StandardCharsets.UTF_8));
+        assertTrue(first.etag().startsWith("W/\""));
+
+        // Same modification time, the file isn't read again
+        write("{\"N4\":[]}", 1_000_000);
+        store.reloadChanged();
+        assertSame(first, store.get("books"));
+
+        write("{\"N4\":[]}", 2_000_000);
+        store.reloadChanged();
+        DatasetStore.Dataset second = store.get("books");
+        assertEquals("{\"N4\":[]}", new String(second.bytes(), StandardCharsets.UTF_8));
+        assertEquals(2_000_000, second.modifiedMillis());
+        assertNotEquals(first.etag(), second.etag());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(second.gzipped()))) {
+            assertArrayEquals(second.bytes(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void missingFilesFallBackToTheBundledCopyOrReportAnError() throws Exception {
+        DatasetStore store = new DatasetStore(folder.getRoot().toString());
+        // N5Books.json is bundled with the app, books_by_jlpt.json isn't
+        assertEquals(0, store.get("ehonnavi-books").modifiedMillis());
+        assertNull(store.get("books"));
+        assertTrue(store.loadError("books").startsWith("Error reading the JSON file"));
+
+        write("{}", 1_000_000);
+        store.reloadChanged();
+        assertEquals("{}", new String(store.get("books").bytes(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Writing a scraper's output file, the same bucket-and-stream steps CrawlOrchestrator uses to save results
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"1000", "10000"})
+    private int catalogSize;
+
+    private List<Book> books;
+    private Path directory;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        books = BenchmarkData.books(catalogSize);
+        directory = Files.createTempDirectory("export-benchmark");
+        output = directory.resolve("books_by_jlpt.json");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void saveResultsToFile() throws IOException {
+        try (BookJsonWriter writer = new BookJsonWriter(output)) {
+            for (Map.Entry<JlptLevel, List<Book>> entry : JlptLevel.bucket(books).entrySet()) {
+                writer.startLevel(entry.getKey().label());
+                for (Book book : entry.getValue()) {
+                    writer.writeBook(book);
+                }
+                writer.endLevel();
+            }
+            writer.commit();
+        }
+    }
+}
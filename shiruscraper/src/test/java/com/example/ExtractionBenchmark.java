@@ -0,0 +1,105 @@
+package com.example;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Parsing and item extraction for the saved listing and detail pages in src/test/resources/fixtures.
+// FixtureRecorder saves fresh copies of them from the live sites
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    // Fixture file name without .html, the part before the dash picks the scraper
+    @Param({"honto-listing", "animate-listing", "ehonnavi-listing", "honto-detail"})
+    private String fixture;
+
+    private SourceScraper scraper;
+    private boolean detailPage;
+    private String baseUri;
+    private String html;
+    private Document doc;
+
+    @Setup
+    public void setUp() {
+        String source = fixture.substring(0, fixture.indexOf('-'));
+        for (SourceScraper candidate : CrawlOrchestrator.SOURCES) {
+            if (candidate.source().equals(source)) {
+                scraper = candidate;
+            }
+        }
+        detailPage = fixture.endsWith("-detail");
+        baseUri = scraper.listingUrl(1);
+        html = BenchmarkData.fixture(fixture + ".html");
+        doc = Jsoup.parse(html, baseUri);
+
+        // Timings of the two paths only compare when they find the same items
+        List<Map<String, String>> streamed;
+        try {
+            streamed = streamAndExtract();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not stream " + fixture, e);
+        }
+        if (streamed.isEmpty() || !streamed.equals(extract(doc))) {
+            throw new IllegalStateException("Streaming and DOM extraction disagree on " + fixture + ": " + streamed + " vs " + extract(doc));
+        }
+    }
+
+    // Parse and extract, what a cache miss costs
+    @Benchmark
+    public Object parseAndExtract() {
+        return extract(Jsoup.parse(html, baseUri));
+    }
+
+    // Selectors only, on an already parsed page
+    @Benchmark
+    public Object extractOnly() {
+        return extract(doc);
+    }
+
+    // StreamParser path the crawler uses, detail pages stop at the first match
+    @Benchmark
+    public List<Map<String, String>> streamAndExtract() throws IOException {
+        return detailPage
+                ? StreamingExtractor.extract(new StringReader(html), baseUri, scraper.detailSelector(), scraper::extractDetail, 1)
+                : StreamingExtractor.extract(new StringReader(html), baseUri, scraper.itemSelector(), scraper::extractItem, Integer.MAX_VALUE);
+    }
+
+    private List<Map<String, String>> extract(Document page) {
+        if (detailPage) {
+            Element detail = page.selectFirst(scraper.detailSelector());
+            Map<String, String> extracted = detail != null ? scraper.extractDetail(detail) : null;
+            return extracted != null ? List.of(extracted) : List.of();
+        }
+        List<Map<String, String>> items = new ArrayList<>();
+        for (Element element : page.select(scraper.itemSelector())) {
+            Map<String, String> item = scraper.extractItem(element);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Saves page 1 of every source's listing and the detail page of honto's first book as the fixtures in
+// src/test/resources/fixtures, trimmed to what the benchmarks and tests need:
+//   - listings keep their first MAX_ITEMS items, the pager and the rest of the page stay as served
+//   - comments, iframes and noscript blocks are dropped, they only carry tracking markup
+//   - the page is re-encoded as UTF-8 whatever charset the site served
+// Run it from shiruscraper/ with
+//   mvn -q test-compile exec:java -Dexec.mainClass=com.example.FixtureRecorder -Dexec.classpathScope=test
+// then check the fixture tests (WebScraperTest, StreamingExtractorTest, CrawlOrchestratorTest) against the new pages
+public final class FixtureRecorder {
+
+    private static final int MAX_ITEMS = 40;
+    private static final int MAX_PAGE_BYTES = 5 * 1024 * 1024;
+    private static final Path FIXTURES = Paths.get("src", "test", "resources", "fixtures");
+
+    private FixtureRecorder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (SourceScraper source : CrawlOrchestrator.SOURCES) {
+            String url = source.listingUrl(1);
+            Document listing = fetch(url);
+            Elements items = listing.select(source.itemSelector());
+            for (int i = MAX_ITEMS; i < items.size(); i++) {
+                items.get(i).remove();
+            }
+            save(source.source() + "-listing.html", listing);
+
+            if (source instanceof WebScraper) {
+                for (Element item : listing.select(source.itemSelector())) {
+                    Map<String, String> extracted = source.extractItem(item);
+                    if (extracted != null && extracted.get("bookUrl") != null) {
+                        save(source.source() + "-detail.html", fetch(extracted.get("bookUrl")));
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static Document fetch(String url) throws IOException {
+        System.out.println("Fetching " + url);
+        HtmlFetcher.Download download = HtmlFetcher.shared().download(url, MAX_PAGE_BYTES);
+        // No charset given, so the page's own <meta charset> or BOM decides, as for a browser
+        return Jsoup.parse(new ByteArrayInputStream(download.body()), null, url);
+    }
+
+    private static void save(String name, Document page) throws IOException {
+        page.select("iframe, noscript").remove();
+        List<Node> comments = new ArrayList<>();
+        page.forEachNode(node -> {
+            if (node instanceof Comment) {
+                comments.add(node);
+            }
+        });
+        comments.forEach(Node::remove);
+        page.charset(StandardCharsets.UTF_8);
+
+        Path target = FIXTURES.resolve(name);
+        Files.writeString(target, page.outerHtml(), StandardCharsets.UTF_8);
+        System.out.println("Saved " + target + " (" + Files.size(target) / 1024 + " KB)");
+    }
+}
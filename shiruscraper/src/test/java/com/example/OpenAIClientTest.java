@@ -0,0 +1,60 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Test;
+
+public class OpenAIClientTest {
+
+    private static Response response(int code, String... headers) {
+        Response.Builder response = new Response.Builder()
+                .request(new Request.Builder().url("https://api.openai.com/v1/chat/completions").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("");
+        for (int i = 0; i < headers.length; i += 2) {
+            response.header(headers[i], headers[i + 1]);
+        }
+        return response.build();
+    }
+
+    // Backoff is the delay plus up to half of it as jitter
+    private static void assertBackoff(long delay, Response response, int attempt) {
+        for (int i = 0; i < 100; i++) {
+            long backoff = OpenAIClient.backoffMillis(response, attempt);
+            assertTrue("backoff " + backoff, backoff >= delay && backoff <= delay + delay / 2);
+        }
+    }
+
+    @Test
+    public void rateLimitResetDurations() {
+        assertEquals(90000, OpenAIClient.parseDurationMillis("1m30s"));
+        assertEquals(250, OpenAIClient.parseDurationMillis("250ms"));
+        assertEquals(360000, OpenAIClient.parseDurationMillis("6m0s"));
+        assertEquals(1500, OpenAIClient.parseDurationMillis("1.5s"));
+        assertEquals(7200000, OpenAIClient.parseDurationMillis("2h"));
+        assertEquals(1, OpenAIClient.parseDurationMillis("0.2ms")); // Rounded up so a pause is never zero
+        assertEquals(0, OpenAIClient.parseDurationMillis("soon"));
+        assertEquals(0, OpenAIClient.parseDurationMillis(null));
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMaximum() {
+        assertBackoff(1000, response(503), 0);
+        assertBackoff(4000, response(503), 2);
+        assertBackoff(60000, response(503), 6);
+        assertBackoff(60000, response(503), 40);
+    }
+
+    @Test
+    public void backoffWaitsAtLeastAsLongAsTheServerAsks() {
+        assertBackoff(5000, response(429, "Retry-After", "5"), 0);
+        assertBackoff(60000, response(429, "x-ratelimit-reset-requests", "1m30s"), 0); // Capped at the maximum backoff
+        assertBackoff(2000, response(429, "x-ratelimit-reset-tokens", "250ms"), 1);
+        assertBackoff(12500, response(429, "x-ratelimit-reset-requests", "2s", "x-ratelimit-reset-tokens", "12.5s"), 0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String URL = "https://example.test/list?page=1";
+    private static final List<Map<String, String>> ITEMS = List.of(Map.of("title", "ねこがっこう 3巻"));
+
+    private Path directory() {
+        return folder.getRoot().toPath();
+    }
+
+    @Test
+    public void entriesAreReadBackFromDisk() {
+        new PageCache(directory()).put(URL, "1", "\"abc\"", null, ITEMS);
+
+        PageCache.CachedPage page = new PageCache(directory()).get(URL, "1");
+        assertEquals("\"abc\"", page.etag());
+        assertNull(page.lastModified());
+        assertEquals(ITEMS, page.items());
+        assertNull(new PageCache(directory()).get("https://example.test/list?page=2", "1"));
+    }
+
+    @Test
+    public void entriesOfAnotherExtractorVersionAreMissing() {
+        PageCache cache = new PageCache(directory());
+        cache.put(URL, "1", "\"abc\"", null, ITEMS);
+
+        assertNull(cache.get(URL, "2"));
+        assertNull(new PageCache(directory()).get(URL, "2"));
+        assertEquals(ITEMS, cache.get(URL, "1").items());
+    }
+
+    @Test
+    public void removedEntriesAreGoneFromDisk() {
+        PageCache cache = new PageCache(directory());
+        cache.put(URL, "1", null, "Tue, 06 Oct 2026 10:00:00 GMT", ITEMS);
+        cache.remove(URL);
+
+        assertNull(cache.get(URL, "1"));
+        assertNull(new PageCache(directory()).get(URL, "1"));
+    }
+}
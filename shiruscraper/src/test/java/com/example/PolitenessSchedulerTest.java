@@ -0,0 +1,94 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PolitenessSchedulerTest {
+
+    @Test
+    public void crawlDelayComesFromTheWildcardGroup() {
+        String robots = "User-agent: Googlebot\nCrawl-delay: 9\n\nUser-agent: *\nDisallow: /cart\nCrawl-delay: 2 # slow down\n";
+        assertEquals(2.0, PolitenessScheduler.crawlDelaySeconds(robots), 0);
+    }
+
+    @Test
+    public void consecutiveUserAgentsShareAGroup() {
+        String robots = "User-agent: bot\nUser-agent: *\nCrawl-delay: 0.5\nUser-agent: other\nCrawl-delay: 7\n";
+        assertEquals(0.5, PolitenessScheduler.crawlDelaySeconds(robots), 0);
+    }
+
+    @Test
+    public void missingOrInvalidCrawlDelayIsZero() {
+        assertEquals(0.0, PolitenessScheduler.crawlDelaySeconds("User-agent: bot\nCrawl-delay: 3\n"), 0);
+        assertEquals(0.0, PolitenessScheduler.crawlDelaySeconds("User-agent: *\nCrawl-delay: soon\n"), 0);
+        assertEquals(0.0, PolitenessScheduler.crawlDelaySeconds(""), 0);
+    }
+
+    @Test
+    public void rateIsTheLowestLimit() {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> host.equals("slow.example") ? "User-agent: *\nCrawl-delay: 4\n" : null);
+        scheduler.limit("picky.example", 1);
+        scheduler.pause("slow.example", 0);
+        scheduler.pause("picky.example", 0);
+        assertEquals(0.25, scheduler.rate("slow.example"), 1e-9);
+        assertEquals(1.0, scheduler.rate("picky.example"), 1e-9);
+    }
+
+    @Test(timeout = 5000)
+    public void slowRobotsTxtOnlyHoldsUpItsOwnHost() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> {
+            if (host.equals("stuck.example")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        });
+
+        Thread stuck = new Thread(() -> {
+            try {
+                scheduler.acquire("stuck.example");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stuck.start();
+        Thread.sleep(100);
+
+        scheduler.acquire("other.example"); // Returns while stuck.example is still reading its robots.txt
+        assertTrue(stuck.isAlive());
+        release.countDown();
+        stuck.join();
+    }
+
+    @Test(timeout = 5000)
+    public void acquireWaitsForAPauseSetWhileWaiting() throws Exception {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> null);
+        scheduler.limit("example.test", 1);
+        scheduler.acquire("example.test"); // Uses the only token, the next request waits about a second
+
+        Thread pauser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler.pause("example.test", 1500);
+        });
+        long startNanos = System.nanoTime();
+        pauser.start();
+        scheduler.acquire("example.test");
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        pauser.join();
+
+        assertTrue("waited " + waitedMillis + " ms", waitedMillis >= 1500);
+    }
+}
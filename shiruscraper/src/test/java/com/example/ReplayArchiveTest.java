@@ -0,0 +1,62 @@
+package com.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplayArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ReplayArchive.Entry entry(Map<String, String> headers) {
+        String url = "https://honto.jp/ranking/gr/bestseller_1_1_1.html?pgno=1";
+        return new ReplayArchive.Entry(ReplayArchive.key("GET", url, null), "GET", url, 200, headers,
+                "<html></html>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void entriesAreReadBackWithoutTempFilesLeftOver() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ReplayArchive archive = new ReplayArchive(directory);
+        ReplayArchive.Entry entry = entry(Map.of("ETag", "\"1\""));
+        archive.put(entry);
+        archive.put(entry);
+
+        ReplayArchive.Entry read = archive.get(entry.key());
+        assertEquals(entry.url(), read.url());
+        assertEquals(entry.headers(), read.headers());
+        assertArrayEquals(entry.body(), read.body());
+        assertNull(archive.get(ReplayArchive.key("POST", entry.url(), new byte[] {1})));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void conditionalRequestsMatchTheEtagOrTheLastModifiedDate() {
+        ReplayArchive.Entry entry = entry(Map.of("ETag", "\"1\"", "Last-Modified", "Tue, 15 Oct 2024 08:00:00 GMT"));
+        assertTrue(entry.notModified("\"1\"", null));
+        assertFalse(entry.notModified("\"2\"", null));
+        assertTrue(entry.notModified(null, "Tue, 15 Oct 2024 08:00:00 GMT"));
+        assertTrue(entry.notModified(null, "Wed, 16 Oct 2024 08:00:00 GMT"));
+        assertFalse(entry.notModified(null, "Mon, 14 Oct 2024 08:00:00 GMT"));
+        // A stale ETag wins over a date that would match, unreadable dates never match
+        assertFalse(entry.notModified("\"2\"", "Wed, 16 Oct 2024 08:00:00 GMT"));
+        assertFalse(entry.notModified(null, "yesterday"));
+        assertFalse(entry.notModified(null, null));
+        assertFalse(entry(Map.of()).notModified(null, "Wed, 16 Oct 2024 08:00:00 GMT"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+public class StreamingExtractorTest {
+
+    private static List<Map<String, String>> stream(String html, String query, Function<Element, Map<String, String>> extract,
+                                                    int maxItems) throws Exception {
+        return StreamingExtractor.extract(new StringReader(html), "https://example.test/", query, extract, maxItems);
+    }
+
+    private static List<Map<String, String>> dom(String html, String query, Function<Element, Map<String, String>> extract,
+                                                 int maxItems) {
+        return StreamingExtractor.extract(Jsoup.parse(html, "https://example.test/"), query, extract, maxItems);
+    }
+
+    private static void assertSameItems(SourceScraper scraper, String fixture) throws Exception {
+        String html = BenchmarkData.fixture(fixture);
+        // Items and pager links in one query, as the crawl reads listing pages
+        String query = scraper.itemSelector() + ", a[href*=" + scraper.pageParameter() + "=]";
+        Function<Element, Map<String, String>> extract = element -> element.is(scraper.itemSelector())
+                ? scraper.extractItem(element)
+                : Map.of("pager", element.attr("href"));
+
+        List<Map<String, String>> streamed = stream(html, query, extract, Integer.MAX_VALUE);
+        assertFalse(streamed.isEmpty());
+        assertEquals(dom(html, query, extract, Integer.MAX_VALUE), streamed);
+        assertEquals(dom(html, query, extract, 3), stream(html, query, extract, 3));
+    }
+
+    @Test
+    public void streamingAndDomGiveTheSameListingItems() throws Exception {
+        assertSameItems(new WebScraper(), "honto-listing.html");
+        assertSameItems(new AniOnline(), "animate-listing.html");
+        assertSameItems(new EhonnaviScraper(), "ehonnavi-listing.html");
+    }
+
+    @Test
+    public void streamingAndDomGiveTheSameDetail() throws Exception {
+        WebScraper scraper = new WebScraper();
+        String html = BenchmarkData.fixture("honto-detail.html");
+        assertEquals(dom(html, scraper.detailSelector(), scraper::extractDetail, 1),
+                stream(html, scraper.detailSelector(), scraper::extractDetail, 1));
+    }
+
+    @Test
+    public void matchesInsideAnItemBelongToTheItem() throws Exception {
+        String html = "<ul><li class=\"book\"><a href=\"/list?page=7\">ねこ 7巻</a></li>"
+                + "<li class=\"book\"><span><a href=\"/list?page=8\">うみ</a></span></li></ul>"
+                + "<div class=\"pager\"><a href=\"/list?page=2\">2</a></div>";
+        String query = "li.book, a[href*=page=]";
+        Function<Element, Map<String, String>> extract = element -> element.is("li.book")
+                ? Map.of("title", element.text(), "bookUrl", element.selectFirst("a").attr("href"))
+                : Map.of("pager", element.attr("href"));
+
+        List<Map<String, String>> expected = List.of(Map.of("title", "ねこ 7巻", "bookUrl", "/list?page=7"),
+                Map.of("title", "うみ", "bookUrl", "/list?page=8"), Map.of("pager", "/list?page=2"));
+        assertEquals(expected, stream(html, query, extract, Integer.MAX_VALUE));
+        assertEquals(expected, dom(html, query, extract, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Title normalization, duplicate detection and reconciling classifier results back to the scraped books
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleBenchmark {
+
+    @Param({"100", "1000"})
+    private int catalogSize;
+
+    private List<String> titles;
+    private List<String> normalizedTitles;
+    private List<Book> books;
+    private JlptLevel[] classifiedLevels;
+
+    @Setup
+    public void setUp() {
+        titles = BenchmarkData.titles(catalogSize);
+        normalizedTitles = new ArrayList<>(catalogSize);
+        for (String title : titles) {
+            normalizedTitles.add(Titles.normalizeTitle(title));
+        }
+
+        books = BenchmarkData.books(catalogSize);
+        classifiedLevels = new JlptLevel[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            classifiedLevels[i] = JlptLevel.values()[i % 5];
+        }
+    }
+
+    @Benchmark
+    public void normalizeTitle(Blackhole blackhole) {
+        for (String title : titles) {
+            blackhole.consume(Titles.normalizeTitle(title));
+        }
+    }
+
+    // Group near duplicate titles across the whole catalog with MinHash/LSH
+    @Benchmark
+    public List<List<String>> clusterDuplicates() {
+        return TitleDeduplicator.cluster(normalizedTitles, Function.identity());
+    }
+
+    // Apply one classification result per book and group the catalog by level for export
+    @Benchmark
+    public Map<JlptLevel, List<Book>> reassignLevels() {
+        for (int i = 0; i < books.size(); i++) {
+            books.get(i).setLevel(classifiedLevels[i]);
+        }
+        return JlptLevel.bucket(books);
+    }
+}
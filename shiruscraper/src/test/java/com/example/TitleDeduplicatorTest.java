@@ -0,0 +1,100 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class TitleDeduplicatorTest {
+
+    private static List<List<String>> cluster(String... titles) {
+        return TitleDeduplicator.cluster(List.of(titles), TitleDeduplicator::dedupKey);
+    }
+
+    @Test
+    public void groupsReformattedTitles() {
+        List<List<String>> groups = cluster("囀る鳥は羽ばたかない 9", "うみへ やまへ", "【コミック】囀る鳥は羽ばたかない（9）");
+        assertEquals(2, groups.size());
+        assertEquals(List.of("囀る鳥は羽ばたかない 9", "【コミック】囀る鳥は羽ばたかない（9）"), groups.get(0));
+        assertEquals(List.of("うみへ やまへ"), groups.get(1));
+    }
+
+    @Test
+    public void keepsVolumesApart() {
+        List<List<String>> groups = cluster("転生したらスライムだった件 21巻", "転生したらスライムだった件 22巻", "転生したらスライムだった件 21巻");
+        assertEquals(2, groups.size());
+        assertEquals(2, groups.get(0).size());
+    }
+
+    @Test
+    public void shortAndEmptyTitlesOnlyMatchExactly() {
+        assertEquals(3, cluster("ab", "ac", "").size());
+        assertEquals(1, TitleDeduplicator.cluster(List.of("ab", "ab"), Function.identity()).size());
+    }
+
+    @Test
+    public void mergeKeepsEveryListing() {
+        Book honto = new Book("honto", JlptLevel.NA, "【コミック】囀る鳥は羽ばたかない（9）", null, "https://honto.jp/a");
+        Book animate = new Book("animate", JlptLevel.N3, "囀る鳥は羽ばたかない 9", null, "https://www.animate-onlineshop.jp/b");
+        Book other = new Book("animate", JlptLevel.NA, "うみへ やまへ", null, "https://www.animate-onlineshop.jp/c");
+
+        List<Book> merged = TitleDeduplicator.merge(List.of(honto, animate, other));
+        assertEquals(List.of(honto, other), merged);
+        assertEquals(List.of(animate), honto.duplicates());
+        assertEquals(JlptLevel.N3, honto.level()); // Taken from the duplicate since the first listing had none
+        assertTrue(other.duplicates().isEmpty());
+    }
+
+    @Test
+    public void keepsKanjiNumeralVolumesApart() {
+        // Long enough that the titles alone would be close enough to merge
+        assertEquals(2, cluster("転生したらスライムだった件～魔物の国の歩き方～ 第二巻", "転生したらスライムだった件～魔物の国の歩き方～ 第三巻").size());
+        assertEquals(2, cluster("転生したらスライムだった件～魔物の国の歩き方～ 十二", "転生したらスライムだった件～魔物の国の歩き方～ 十三").size());
+        assertEquals(1, cluster("転生したらスライムだった件～魔物の国の歩き方～ 第二巻", "【コミック】転生したらスライムだった件～魔物の国の歩き方～ 第二巻").size());
+    }
+
+    @Test
+    public void keepsUpperMiddleAndLowerVolumesApart() {
+        assertEquals(3, cluster("ハリー・ポッターと炎のゴブレット 上", "ハリー・ポッターと炎のゴブレット 中", "ハリー・ポッターと炎のゴブレット 下").size());
+        assertEquals(1, cluster("ハリー・ポッターと炎のゴブレット 上", "ハリー・ポッターと炎のゴブレット（上）").size());
+    }
+
+    @Test
+    public void keepsSpecialEditionsApart() {
+        assertEquals(2, cluster("転生したらスライムだった件 21巻 特装版", "転生したらスライムだった件 21巻").size());
+        assertEquals(2, cluster("転生したらスライムだった件 21巻 【特装版】", "転生したらスライムだった件 21巻").size());
+        assertEquals(1, cluster("転生したらスライムだった件 21巻 【特装版】", "転生したらスライムだった件 21巻 特装版").size());
+        assertEquals(1, cluster("転生したらスライムだった件 21巻 通常版", "転生したらスライムだった件 21巻").size());
+    }
+
+    @Test
+    public void neverMergesTwoProductsOfOneSource() {
+        Book first = new Book("ehonnavi", JlptLevel.N5, "ぐりとぐら", null, "https://www.ehonnavi.net/1");
+        Book reprint = new Book("ehonnavi", JlptLevel.N5, "ぐりとぐら", null, "https://www.ehonnavi.net/2");
+        Book relisted = new Book("ehonnavi", JlptLevel.N5, "ぐりとぐら", null, "https://www.ehonnavi.net/1");
+        Book other = new Book("animate", JlptLevel.NA, "うみへ やまへ", null, "https://www.animate-onlineshop.jp/c");
+        Book elsewhere = new Book("honto", JlptLevel.NA, "【絵本】ぐりとぐら", null, "https://honto.jp/a");
+
+        List<Book> merged = TitleDeduplicator.merge(List.of(first, reprint, other, relisted, elsewhere));
+        assertEquals(List.of(first, reprint, other), merged);
+        assertEquals(List.of(relisted, elsewhere), first.duplicates());
+        assertTrue(reprint.duplicates().isEmpty());
+    }
+
+    @Test
+    public void listingsWithoutBookUrlOnlyMergeExactRepeats() {
+        // animate listings have no bookUrl, so near identical titles can't be told apart as one product
+        Book first = new Book("animate", JlptLevel.NA, "ねこ探偵の事件簿 ふたたび", null, null);
+        Book sequel = new Book("animate", JlptLevel.NA, "ねこ探偵の事件簿 ふたたびへ", null, null);
+        Book repeated = new Book("animate", JlptLevel.NA, "【コミック】ねこ探偵の事件簿 ふたたび", null, null);
+        Book elsewhere = new Book("honto", JlptLevel.NA, "ねこ探偵の事件簿 ふたたびへ", null, "https://honto.jp/a");
+
+        List<Book> merged = TitleDeduplicator.merge(List.of(first, sequel, repeated, elsewhere));
+        assertEquals(List.of(first, sequel), merged);
+        assertEquals(List.of(repeated, elsewhere), first.duplicates());
+        assertTrue(sequel.duplicates().isEmpty());
+    }
+}
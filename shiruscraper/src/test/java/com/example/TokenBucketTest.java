@@ -0,0 +1,44 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // Within 100ms below the expected wait, the bucket refills a little while the test runs
+    private static void assertWait(long expectedNanos, long actualNanos) {
+        assertTrue("waited " + actualNanos, actualNanos <= expectedNanos && actualNanos > expectedNanos - SECOND / 10);
+    }
+
+    @Test
+    public void reservationsBeyondTheBucketAreSpacedByTheRefillRate() {
+        TokenBucket bucket = new TokenBucket(2, 1);
+        assertEquals(0, bucket.reserveNanos(1));
+        assertEquals(0, bucket.reserveNanos(1));
+        assertWait(SECOND, bucket.reserveNanos(1));
+        assertWait(2 * SECOND, bucket.reserveNanos(1));
+    }
+
+    @Test
+    public void oversizedReservationsOnlyTakeAFullBucket() {
+        TokenBucket bucket = new TokenBucket(2, 4);
+        assertEquals(0, bucket.reserveNanos(50));
+        // The bucket is empty now, two tokens at 4 a second take half a second
+        assertWait(SECOND / 2, bucket.reserveNanos(50));
+    }
+
+    @Test
+    public void acquireWaitsForTheRefill() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 20);
+        bucket.acquire(1);
+        long startNanos = System.nanoTime();
+        bucket.acquire(1);
+        assertTrue(System.nanoTime() - startNanos >= SECOND / 20 - TimeUnit.MILLISECONDS.toNanos(5));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+public class WebScraperTest {
+
+    private final WebScraper scraper = new WebScraper();
+
+    // One listing entry with the given link and image markup
+    private Map<String, String> extract(String link, String image) {
+        Document doc = Jsoup.parse("<div class=\"stProduct02\">" + link + image + "</div>", "https://honto.jp/");
+        return scraper.extractItem(doc.selectFirst(scraper.itemSelector()));
+    }
+
+    private Map<String, String> extractTitle(String link, String alt) {
+        return extract(link, "<img class=\"dyImage\" data-src=\"https://image.honto.jp/1.jpg\" alt=\"" + alt + "\">");
+    }
+
+    @Test
+    public void extractsEveryListingEntryOfTheFixture() {
+        Document doc = Jsoup.parse(BenchmarkData.fixture("honto-listing.html"), "https://honto.jp/");
+        List<Map<String, String>> items = new ArrayList<>();
+        for (Element element : doc.select(scraper.itemSelector())) {
+            items.add(scraper.extractItem(element));
+        }
+
+        assertEquals(40, items.size());
+        Map<String, String> first = items.get(0);
+        assertEquals("うみ転生ひかり 2巻 【電子書籍限定書き下ろしSS付き】", first.get("title"));
+        assertEquals("https://honto.jp/ebook/pd_30000000.html", first.get("bookUrl"));
+        assertEquals("https://image.honto.jp/item/1/75/100000.jpg", first.get("imageUrl"));
+        // Complete listing titles need no detail page in the default auto mode
+        assertNull(scraper.detailUrl(first));
+    }
+
+    @Test
+    public void extractsTheDetailTitleOfTheFixture() {
+        Document doc = Jsoup.parse(BenchmarkData.fixture("honto-detail.html"), "https://honto.jp/");
+        assertEquals(Map.of("title", "ねこがっこう日常魔王 3巻"), scraper.extractDetail(doc.selectFirst(scraper.detailSelector())));
+    }
+
+    @Test
+    public void cutOffLinkTextUsesTheFullTitleAttribute() {
+        Map<String, String> item = extractTitle("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\" title=\"ドラゴン学園の日常 3巻\">ドラゴン学園の…</a>", "");
+        assertEquals("ドラゴン学園の日常 3巻", item.get("title"));
+        assertNull(scraper.detailUrl(item));
+    }
+
+    @Test
+    public void coverAltTextFillsInForMissingLinkText() {
+        Map<String, String> item = extractTitle("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\"></a>", "うみへいこう");
+        assertEquals("うみへいこう", item.get("title"));
+        assertNull(scraper.detailUrl(item));
+    }
+
+    @Test
+    public void cutOffAttributeKeepsTheLinkText() {
+        Map<String, String> item = extractTitle("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\" data-title=\"ねこ探偵...\">ねこ探偵の事件簿</a>", "");
+        assertEquals("ねこ探偵の事件簿", item.get("title"));
+        assertNull(scraper.detailUrl(item));
+    }
+
+    @Test
+    public void titlesThatStayCutOffOrDisagreeNeedTheDetailPage() {
+        Map<String, String> cutOff = extractTitle("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\">魔王星‥</a>", "");
+        assertEquals("魔王星‥", cutOff.get("title"));
+        assertEquals("https://honto.jp/ebook/pd_1.html", scraper.detailUrl(cutOff));
+
+        Map<String, String> disagreeing = extractTitle("<a class=\"dyTitle\" href=\"/ebook/pd_2.html\">ひかりねこ 7巻</a>", "そらねこ 7巻");
+        assertEquals("ひかりねこ 7巻", disagreeing.get("title"));
+        assertEquals("https://honto.jp/ebook/pd_2.html", scraper.detailUrl(disagreeing));
+    }
+
+    @Test
+    public void entriesWithoutLinkOrImageAreSkipped() {
+        assertNull(extract("<a class=\"dyTitle\">no link</a>", "<img class=\"dyImage\" data-src=\"https://image.honto.jp/1.jpg\">"));
+        assertNull(extract("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\">ねこ</a>", "<img class=\"dyImage\">"));
+    }
+
+    @Test
+    public void srcsetFallbackTakesTheLargestCandidate() {
+        Map<String, String> item = extract("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\">ねこ</a>",
+                "<img class=\"dyImage\" srcset=\"//image.honto.jp/s.jpg 1x, //image.honto.jp/l.jpg 2x\">");
+        assertEquals("https://image.honto.jp/l.jpg", item.get("imageUrl"));
+    }
+
+    @Test
+    public void srcsetDescriptors() {
+        assertEquals("b.jpg", WebScraper.largestSrcsetCandidate("a.jpg 1x, b.jpg 2x"));
+        assertEquals("b.jpg", WebScraper.largestSrcsetCandidate("a.jpg 150w, b.jpg 300w, c.jpg 200w"));
+        // No descriptor counts as 1x, so a 2x candidate wins and a 0.5x one doesn't
+        assertEquals("b.jpg", WebScraper.largestSrcsetCandidate("a.jpg, b.jpg 2x"));
+        assertEquals("a.jpg", WebScraper.largestSrcsetCandidate("a.jpg, b.jpg 0.5x"));
+        // Unreadable sizes count as 1x too, the first of equal candidates is kept
+        assertEquals("a.jpg", WebScraper.largestSrcsetCandidate("a.jpg bigx, b.jpg"));
+        assertEquals("a.jpg", WebScraper.largestSrcsetCandidate(" , a.jpg 1x,"));
+        assertEquals("", WebScraper.largestSrcsetCandidate(""));
+    }
+
+    @Test
+    public void detailPolicyFallsBackToAuto() {
+        assertEquals(WebScraper.DetailPolicy.ALWAYS, WebScraper.DetailPolicy.fromProperty(" Always "));
+        assertEquals(WebScraper.DetailPolicy.NEVER, WebScraper.DetailPolicy.fromProperty("never"));
+        assertEquals(WebScraper.DetailPolicy.AUTO, WebScraper.DetailPolicy.fromProperty("sometimes"));
+    }
+
+    @Test
+    public void missingListingTitleNeedsTheDetailPage() {
+        Map<String, String> item = extractTitle("<a class=\"dyTitle\" href=\"/ebook/pd_1.html\"></a>", "");
+        assertFalse(item.containsKey("title"));
+        assertEquals("https://honto.jp/ebook/pd_1.html", scraper.detailUrl(item));
+    }
+}